@@ -0,0 +1,184 @@
+/**
+ * A {@link Callback} which remembers the answers of another Callback, for callbacks whose
+ * {@link Callback#areItemsTheSame(int, int)} or {@link Callback#areContentsTheSame(int, int)}
+ * are expensive.
+ * <p>
+ * The same (old, new) pair is compared several times during a diff: by the forward and the
+ * backward pass of Myers' search, by neighbouring ranges and again by move detection. Wrap the
+ * callback before calling {@link DiffUtil#calculateDiff(Callback)}:
+ * <pre>
+ *     CachingCallback cachingCallback = new CachingCallback(new MyCallback(oldList, newList));
+ *     DiffResult result = DiffUtil.calculateDiff(cachingCallback);
+ *     Log.d(TAG, "comparison cache hit rate " + cachingCallback.getHitRate());
+ * </pre>
+ * <p>
+ * The answers are kept in a fixed size open addressing table of packed {@code long}s, so the
+ * memory used is bounded: when the probed slots of a pair are all taken, the pair evicts the
+ * entry in its first slot. The table can be shared by the threads of a parallel diff, a lost
+ * race only costs a miss.
+ * <p>
+ * There is no point wrapping a {@link KeyedCallback}, its comparisons are already array reads
+ * and the wrapper hides its keys from DiffUtil.
+ * 缓存areItemsTheSame/areContentsTheSame的结果，内存固定，满了直接覆盖
+ */
+public static class CachingCallback extends Callback {
+    /**
+     * The number of entries of {@link #CachingCallback(Callback)}, 512KB of memory.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+    // slots probed for a pair before evicting
+    private static final int MAX_PROBES = 4;
+    // entry layout: new position in bits 0-28, old position in bits 29-57, answers above
+    private static final int POSITION_BITS = 29;
+    private static final int MAX_POSITION = (1 << POSITION_BITS) - 1;
+    private static final long PAIR_MASK = (1L << (2 * POSITION_BITS)) - 1;
+    private static final long ITEMS_KNOWN = 1L << (2 * POSITION_BITS);
+    private static final long ITEMS_SAME = ITEMS_KNOWN << 1;
+    private static final long CONTENTS_KNOWN = ITEMS_SAME << 1;
+    private static final long CONTENTS_SAME = CONTENTS_KNOWN << 1;
+    private final Callback mCallback;
+    // 0 is an empty slot, a stored entry always has a KNOWN bit
+    private final AtomicLongArray mEntries;
+    private final int mMask;
+    // positions past MAX_POSITION can't be packed, such lists are not cached
+    private final boolean mEnabled;
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    /**
+     * @param callback The callback to cache the answers of
+     */
+    public CachingCallback(Callback callback) {
+        this(callback, DEFAULT_MAX_ENTRIES);
+    }
+    /**
+     * @param callback The callback to cache the answers of
+     * @param maxEntries The maximum number of (old, new) pairs to remember, rounded down to a
+     *                   power of two. Each entry takes 8 bytes.
+     */
+    public CachingCallback(Callback callback, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        mCallback = callback;
+        final int capacity = Integer.highestOneBit(maxEntries);
+        mEntries = new AtomicLongArray(capacity);
+        mMask = capacity - 1;
+        mEnabled = callback.getOldListSize() <= MAX_POSITION
+                && callback.getNewListSize() <= MAX_POSITION;
+    }
+    @Override
+    public int getOldListSize() {
+        return mCallback.getOldListSize();
+    }
+    @Override
+    public int getNewListSize() {
+        return mCallback.getNewListSize();
+    }
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        if (!mEnabled) {
+            return mCallback.areItemsTheSame(oldItemPosition, newItemPosition);
+        }
+        final long pair = ((long) oldItemPosition << POSITION_BITS) | newItemPosition;
+        final long entry = find(pair);
+        if ((entry & ITEMS_KNOWN) != 0) {
+            mHits.incrementAndGet();
+            return (entry & ITEMS_SAME) != 0;
+        }
+        mMisses.incrementAndGet();
+        final boolean same = mCallback.areItemsTheSame(oldItemPosition, newItemPosition);
+        store(pair, ITEMS_KNOWN | (same ? ITEMS_SAME : 0));
+        return same;
+    }
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        if (!mEnabled) {
+            return mCallback.areContentsTheSame(oldItemPosition, newItemPosition);
+        }
+        final long pair = ((long) oldItemPosition << POSITION_BITS) | newItemPosition;
+        final long entry = find(pair);
+        if ((entry & CONTENTS_KNOWN) != 0) {
+            mHits.incrementAndGet();
+            return (entry & CONTENTS_SAME) != 0;
+        }
+        mMisses.incrementAndGet();
+        final boolean same = mCallback.areContentsTheSame(oldItemPosition, newItemPosition);
+        store(pair, CONTENTS_KNOWN | (same ? CONTENTS_SAME : 0));
+        return same;
+    }
+    @Nullable
+    @Override
+    public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+        // payloads are objects and asked for once per change, nothing to cache
+        return mCallback.getChangePayload(oldItemPosition, newItemPosition);
+    }
+    /**
+     * @return The entry of the pair or 0 if it is not cached.
+     */
+    private long find(long pair) {
+        int slot = LongIntHashMap.hash(pair) & mMask;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final long entry = mEntries.get(slot);
+            if (entry == 0) {
+                return 0;
+            }
+            if ((entry & PAIR_MASK) == pair) {
+                return entry;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return 0;
+    }
+    /**
+     * Adds the answer bits to the entry of the pair, evicting another pair if needed.
+     */
+    private void store(long pair, long answer) {
+        final int home = LongIntHashMap.hash(pair) & mMask;
+        int slot = home;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final long entry = mEntries.get(slot);
+            if (entry == 0) {
+                mEntries.set(slot, pair | answer);
+                return;
+            }
+            if ((entry & PAIR_MASK) == pair) {
+                mEntries.set(slot, entry | answer);
+                return;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        mEntries.set(home, pair | answer);
+    }
+    /**
+     * @return The number of comparisons answered from the cache.
+     */
+    public long getHitCount() {
+        return mHits.get();
+    }
+    /**
+     * @return The number of comparisons which were delegated to the wrapped callback.
+     */
+    public long getMissCount() {
+        return mMisses.get();
+    }
+    /**
+     * @return The share of comparisons answered from the cache, between 0 and 1, or 0 if no
+     * comparison was made yet.
+     */
+    public double getHitRate() {
+        final long hits = mHits.get();
+        final long total = hits + mMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+    /**
+     * Forgets the cached answers and resets the counters, for instance before re-using the
+     * callback after its lists changed.
+     */
+    public void clear() {
+        for (int i = 0; i <= mMask; i++) {
+            mEntries.set(i, 0);
+        }
+        mHits.set(0);
+        mMisses.set(0);
+    }
+}
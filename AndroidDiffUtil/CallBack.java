@@ -1,17 +1,3 @@
-
-
-// 用来调整分块部分处理的先后顺序
-private static final Comparator<Snake> SNAKE_COMPARATOR = new Comparator<Snake>() {
-    @Override
-    public int compare(Snake o1, Snake o2) {
-        int cmpX = o1.x - o2.x;
-        return cmpX == 0 ? o1.y - o2.y : cmpX;
-    }
-};
-
-
-
-
 /**
  * 叫Callback在词义上不是很好，DataSource更合意一些
  * A Callback class used by DiffUtil while calculating the diff between two lists.
@@ -79,4 +65,54 @@ public abstract static class Callback {
     public Object getChangePayload(int oldItemPosition, int newItemPosition) {
         return null;
     }
-}
\ No newline at end of file
+}
+
+/**
+ * A {@link Callback} which hands its item identities and contents over as primitive arrays.
+ * <p>
+ * DiffUtil fetches the arrays once per diff and compares the keys directly inside Myers' loop
+ * instead of calling {@link #areItemsTheSame(int, int)} for every diagonal step. Callbacks
+ * which don't extend this class keep the virtual call path.
+ * 适合有稳定id的列表：id放进long[]，内容用hash表示
+ * <p>
+ * Two items are considered the same item if their keys are equal and to have the same
+ * contents if their content hashes are equal. Override {@link #areContentsTheSame(int, int)}
+ * if hash collisions are not acceptable for your data.
+ */
+public abstract static class KeyedCallback extends Callback {
+    /**
+     * Returns the identities of the items in the old list, indexed by position. The array
+     * must be at least {@link #getOldListSize()} long and must not change during the diff.
+     *
+     * @return The keys of the old list.
+     */
+    public abstract long[] getOldItemKeys();
+    /**
+     * Returns the identities of the items in the new list, indexed by position. The array
+     * must be at least {@link #getNewListSize()} long and must not change during the diff.
+     *
+     * @return The keys of the new list.
+     */
+    public abstract long[] getNewItemKeys();
+    /**
+     * Returns a hash of the contents of each item in the old list, indexed by position.
+     *
+     * @return The content hashes of the old list.
+     */
+    public abstract long[] getOldContentHashes();
+    /**
+     * Returns a hash of the contents of each item in the new list, indexed by position.
+     *
+     * @return The content hashes of the new list.
+     */
+    public abstract long[] getNewContentHashes();
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return getOldItemKeys()[oldItemPosition] == getNewItemKeys()[newItemPosition];
+    }
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return getOldContentHashes()[oldItemPosition]
+                == getNewContentHashes()[newItemPosition];
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * The callback of a composed diff, see {@link DiffResult#compose(DiffResult, DiffResult)}.
+ * <p>
+ * Items of A are keyed by their position. An item of C takes the key of the item of A it was
+ * matched to through B, or a key no item of A has. Content hashes only tell which diff
+ * changed the item, so the results are not needed once the callback is built.
+ * A→B→C：通过B上的位置把C的item映射回A，key就是A中的位置
+ */
+static class ComposedCallback extends KeyedCallback {
+    private final long[] mOldKeys;
+    private final long[] mNewKeys;
+    private final long[] mOldHashes;
+    private final long[] mNewHashes;
+    private static final long CHANGED_IN_FIRST = 1;
+    private static final long CHANGED_IN_SECOND = 2;
+    // position in B of each item of C which has one, for payloads
+    private final int[] mMiddlePositions;
+    @Nullable
+    private final Callback mFirst;
+    @Nullable
+    private final Callback mSecond;
+    @Nullable
+    private final PayloadCombiner mPayloadCombiner;
+    ComposedCallback(DiffResult first, DiffResult second,
+            @Nullable PayloadCombiner payloadCombiner) {
+        final int oldSize = first.getOldListSize();
+        final int newSize = second.getNewListSize();
+        mOldKeys = new long[oldSize];
+        for (int i = 0; i < oldSize; i++) {
+            mOldKeys[i] = i;
+        }
+        // every old item has the same "contents", changed new items differ from it
+        mOldHashes = new long[oldSize];
+        mNewKeys = new long[newSize];
+        mNewHashes = new long[newSize];
+        mMiddlePositions = new int[newSize];
+        for (int i = 0; i < newSize; i++) {
+            final int middle = second.findOldItem(i);
+            final int old = middle == DiffResult.NO_POSITION
+                    ? DiffResult.NO_POSITION : first.findOldItem(middle);
+            mMiddlePositions[i] = middle;
+            if (old == DiffResult.NO_POSITION) {
+                // added in either diff, negative keys never match a position of A
+                mNewKeys[i] = -1L - i;
+            } else {
+                mNewKeys[i] = old;
+                mNewHashes[i] = (first.isItemChanged(middle) ? CHANGED_IN_FIRST : 0)
+                        | (second.isItemChanged(i) ? CHANGED_IN_SECOND : 0);
+            }
+        }
+        // payloads are the only reason to keep the callbacks, don't hold on to them otherwise
+        mFirst = payloadCombiner != null ? first.getCallback() : null;
+        mSecond = payloadCombiner != null ? second.getCallback() : null;
+        mPayloadCombiner = payloadCombiner;
+    }
+    @Override
+    public int getOldListSize() {
+        return mOldKeys.length;
+    }
+    @Override
+    public int getNewListSize() {
+        return mNewKeys.length;
+    }
+    @Override
+    public long[] getOldItemKeys() {
+        return mOldKeys;
+    }
+    @Override
+    public long[] getNewItemKeys() {
+        return mNewKeys;
+    }
+    @Override
+    public long[] getOldContentHashes() {
+        return mOldHashes;
+    }
+    @Override
+    public long[] getNewContentHashes() {
+        return mNewHashes;
+    }
+    @Nullable
+    @Override
+    public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+        if (mPayloadCombiner == null) {
+            return null;
+        }
+        final int middle = mMiddlePositions[newItemPosition];
+        final long changed = mNewHashes[newItemPosition];
+        if (changed == CHANGED_IN_FIRST) {
+            return mFirst.getChangePayload(oldItemPosition, middle);
+        }
+        if (changed == CHANGED_IN_SECOND) {
+            return mSecond.getChangePayload(middle, newItemPosition);
+        }
+        final Object firstPayload = mFirst.getChangePayload(oldItemPosition, middle);
+        // a null payload is a full rebind, which the second change can't narrow down
+        return firstPayload == null ? null : mPayloadCombiner.combine(firstPayload,
+                mSecond.getChangePayload(middle, newItemPosition));
+    }
+}
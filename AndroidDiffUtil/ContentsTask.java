@@ -0,0 +1,33 @@
+/**
+ * Compares the contents of a range of diagonal items on a {@link ForkJoinPool}, see
+ * {@link DiffConfig.Builder#setContentComparisonParallelism(ForkJoinPool, int)}.
+ * <p>
+ * Diagonal items are numbered along the sorted snakes. A diagonal item sits on its own old and
+ * new position, so tasks covering different numbers never write the same status slot and
+ * need no locking.
+ * 对角线上的item按顺序编号，分块并行比较，每块只写自己的status位置
+ */
+// only ever runs in-process, the DiffResult it writes into is not serializable
+@SuppressWarnings("serial")
+static class ContentsTask extends RecursiveAction {
+    private final DiffResult mResult;
+    private final int mFrom;
+    private final int mTo;
+    private final int mChunkSize;
+    ContentsTask(DiffResult result, int from, int to, int chunkSize) {
+        mResult = result;
+        mFrom = from;
+        mTo = to;
+        mChunkSize = chunkSize;
+    }
+    @Override
+    protected void compute() {
+        if (mTo - mFrom <= mChunkSize) {
+            mResult.markDiagonals(mFrom, mTo);
+            return;
+        }
+        final int middle = (mFrom + mTo) >>> 1;
+        invokeAll(new ContentsTask(mResult, mFrom, middle, mChunkSize),
+                new ContentsTask(mResult, middle, mTo, mChunkSize));
+    }
+}
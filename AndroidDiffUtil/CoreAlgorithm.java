@@ -11,95 +11,471 @@
 public static DiffResult calculateDiff(Callback cb) {
     return calculateDiff(cb, true);
 }
+/**
+ * Calculates the list of update operations that can covert one list into the other one.
+ * <p>
+ * If your old and new lists are sorted by the same constraint and items never move (swap
+ * positions), you can disable move detection which takes <code>O(N^2)</code> time where
+ * N is the number of added, moved, removed items. For a {@link KeyedCallback}, move detection
+ * uses a key index and stays close to linear.
+ *
+ * @param cb The callback that acts as a gateway to the backing list data
+ * @param detectMoves True if DiffUtil should try to detect moved items, false otherwise.
+ *
+ * @return A DiffResult that contains the information about the edit sequence to convert the
+ * old list into the new list.
+ */
+public static DiffResult calculateDiff(Callback cb, boolean detectMoves) {
+    return calculateDiff(cb, detectMoves ? DiffConfig.DEFAULT : DiffConfig.NO_MOVES);
+}
+/**
+ * Calculates the list of update operations that can covert one list into the other one, using
+ * the buffers of the given workspace.
+ * <p>
+ * The returned DiffResult is owned by the workspace and is only valid until the workspace is
+ * used for another diff.
+ *
+ * @param cb The callback that acts as a gateway to the backing list data
+ * @param detectMoves True if DiffUtil should try to detect moved items, false otherwise.
+ * @param workspace The scratch memory to use, see {@link DiffWorkspace}
+ *
+ * @return A DiffResult that contains the information about the edit sequence to convert the
+ * old list into the new list.
+ */
+public static DiffResult calculateDiff(Callback cb, boolean detectMoves,
+        DiffWorkspace workspace) {
+    return calculateDiff(cb, detectMoves ? DiffConfig.DEFAULT : DiffConfig.NO_MOVES,
+            workspace);
+}
+/**
+ * Calculates the list of update operations that can covert one list into the other one.
+ *
+ * @param cb The callback that acts as a gateway to the backing list data
+ * @param config How to calculate the diff, see {@link DiffConfig.Builder}
+ *
+ * @return A DiffResult that contains the information about the edit sequence to convert the
+ * old list into the new list.
+ */
+public static DiffResult calculateDiff(Callback cb, DiffConfig config) {
+    return calculateDiff(cb, config, new DiffWorkspace(), null);
+}
+/**
+ * Calculates the list of update operations that can covert one list into the other one, using
+ * the buffers of the given workspace.
+ *
+ * @param cb The callback that acts as a gateway to the backing list data
+ * @param config How to calculate the diff, see {@link DiffConfig.Builder}
+ * @param workspace The scratch memory to use, see {@link DiffWorkspace}
+ *
+ * @return A DiffResult that contains the information about the edit sequence to convert the
+ * old list into the new list. It is only valid until the workspace is used again.
+ */
+public static DiffResult calculateDiff(Callback cb, DiffConfig config,
+        DiffWorkspace workspace) {
+    return calculateDiff(cb, config, workspace, null);
+}
+/**
+ * Calculates the list of update operations that can covert one list into the other one on the
+ * given executor.
+ * <p>
+ * Cancelling the returned future stops the calculation between two d-iterations of Myers'
+ * loop, so a diff that became stale (e.g. a newer list arrived) does not keep burning CPU.
+ * <p>
+ * 注意：Callback会在executor的线程上被调用，diff期间数据不能变
+ *
+ * @param cb The callback that acts as a gateway to the backing list data
+ * @param executor The executor which runs the calculation
+ *
+ * @return A Future of the DiffResult. {@link Future#get()} throws a
+ * {@link CancellationException} if the future was cancelled.
+ */
+public static Future<DiffResult> calculateDiffAsync(Callback cb, Executor executor) {
+    return calculateDiffAsync(cb, DiffConfig.DEFAULT, executor);
+}
+/**
+ * Calculates the list of update operations that can covert one list into the other one on the
+ * given executor.
+ *
+ * @param cb The callback that acts as a gateway to the backing list data
+ * @param detectMoves True if DiffUtil should try to detect moved items, false otherwise.
+ * @param executor The executor which runs the calculation
+ *
+ * @return A Future of the DiffResult.
+ * @see #calculateDiffAsync(Callback, Executor)
+ */
+public static Future<DiffResult> calculateDiffAsync(Callback cb, boolean detectMoves,
+        Executor executor) {
+    return calculateDiffAsync(cb, detectMoves ? DiffConfig.DEFAULT : DiffConfig.NO_MOVES,
+            executor);
+}
+/**
+ * Calculates the list of update operations that can covert one list into the other one on the
+ * given executor.
+ *
+ * @param cb The callback that acts as a gateway to the backing list data
+ * @param config How to calculate the diff, see {@link DiffConfig.Builder}
+ * @param executor The executor which runs the calculation
+ *
+ * @return A Future of the DiffResult.
+ * @see #calculateDiffAsync(Callback, Executor)
+ */
+public static Future<DiffResult> calculateDiffAsync(final Callback cb, final DiffConfig config,
+        Executor executor) {
+    final CancellationSignal signal = new CancellationSignal();
+    final FutureTask<DiffResult> task = new FutureTask<DiffResult>(new Callable<DiffResult>() {
+        @Override
+        public DiffResult call() {
+            return calculateDiff(cb, config, new DiffWorkspace(), signal);
+        }
+    }) {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // FutureTask only interrupts the worker, which Myers' loop never looks at
+            signal.cancel();
+            return super.cancel(mayInterruptIfRunning);
+        }
+    };
+    executor.execute(task);
+    return task;
+}
 /**
  * Calculates the list of update operations that can covert one list into the other one.
  * <p>
  * 此处主要分析不需要move的情况，时间复杂度O(n)
  *
  * @param cb The callback that acts as a gateway to the backing list data
+ * @param config How to calculate the diff
+ * @param workspace Owns every buffer of the calculation
+ * @param signal Checked once per d-iteration through the budget, may be null
  *
  * @return A DiffResult that contains the information about the edit sequence to convert the
  * old list into the new list.
  */
-public static DiffResult calculateDiff(Callback cb) {
+static DiffResult calculateDiff(Callback cb, DiffConfig config, DiffWorkspace workspace,
+        @Nullable CancellationSignal signal) {
+    // 关闭时metrics为null，不包装callback也不取时间戳
+    final DiffMetrics metrics = config.mMetricsEnabled ? new DiffMetrics() : null;
+    long phaseStart = 0;
+    if (metrics != null) {
+        cb = metrics.wrap(cb);
+        phaseStart = System.nanoTime();
+    }
     final int oldSize = cb.getOldListSize();
     final int newSize = cb.getNewListSize();
-    final List<Snake> snakes = new ArrayList<>();
-    // instead of a recursive implementation, we keep our own stack to avoid potential stack
-    // overflow exceptions
-    final List<Range> stack = new ArrayList<>();
-    stack.add(new Range(0, oldSize, 0, newSize));
+    workspace.reset(oldSize, newSize);
+    final SnakeList snakes = workspace.mSnakes;
+    final DiffBudget budget = workspace.mBudget;
+    budget.reset(config, signal, metrics);
+    // Keyed callbacks let us compare primitives instead of calling areItemsTheSame per step.
+    final long[] oldKeys;
+    final long[] newKeys;
+    if (cb instanceof KeyedCallback) {
+        oldKeys = ((KeyedCallback) cb).getOldItemKeys();
+        newKeys = ((KeyedCallback) cb).getNewItemKeys();
+    } else {
+        oldKeys = null;
+        newKeys = null;
+    }
+    // Most updates only touch the middle of the list. Walk the matching head and tail first so
+    // that Myers only runs on (and the k-lines are only sized for) the differing window.
+    // 头尾相同的部分直接当作对角线，不进入Myers
+    // Plain callbacks are not trimmed, telling whether an item has an equal one elsewhere
+    // would take a quadratic number of areItemsTheSame calls.
+    int prefix = 0;
+    int suffix = 0;
+    if (oldKeys != null && config.mTrimEnds) {
+        while (prefix < oldSize && prefix < newSize && oldKeys[prefix] == newKeys[prefix]) {
+            prefix++;
+        }
+        while (suffix < oldSize - prefix && suffix < newSize - prefix
+                && oldKeys[oldSize - suffix - 1] == newKeys[newSize - suffix - 1]) {
+            suffix++;
+        }
+        if (prefix + suffix > 0) {
+            // Myers on the whole lists may pair a head or tail item with an equal item
+            // elsewhere, which trimming would change. Only items whose key occurs once in
+            // each list are trimmed, up to the first one that doesn't.
+            final LongIntHashMap counts = workspace.mKeyPositions;
+            counts.clear();
+            for (int i = 0; i < prefix; i++) {
+                counts.put(oldKeys[i], 0, -1);
+            }
+            for (int i = oldSize - suffix; i < oldSize; i++) {
+                counts.put(oldKeys[i], 0, -1);
+            }
+            countKeys(counts, oldKeys, oldSize);
+            countKeys(counts, newKeys, newSize);
+            int uniquePrefix = 0;
+            while (uniquePrefix < prefix && counts.get(oldKeys[uniquePrefix], 0) == 2) {
+                uniquePrefix++;
+            }
+            int uniqueSuffix = 0;
+            while (uniqueSuffix < suffix
+                    && counts.get(oldKeys[oldSize - uniqueSuffix - 1], 0) == 2) {
+                uniqueSuffix++;
+            }
+            prefix = uniquePrefix;
+            suffix = uniqueSuffix;
+        }
+    }
+    if (prefix > 0) {
+        snakes.add(0, 0, prefix, false, false);
+    }
+    final DiffStrategy.Output output = workspace.mStrategyOutput;
+    output.reset(config, workspace, snakes);
+    final boolean sorted = config.mStrategy.findSnakes(cb, oldKeys, newKeys, prefix,
+            oldSize - suffix, prefix, newSize - suffix, output);
+    if (metrics != null) {
+        final long now = System.nanoTime();
+        metrics.mMyersNanos = now - phaseStart;
+        phaseStart = now;
+    }
+    if (suffix > 0) {
+        snakes.add(oldSize - suffix, newSize - suffix, suffix, false, false);
+    }
+    if (!sorted) {
+        // sort snakes
+        snakes.sort();
+        if (metrics != null) {
+            metrics.mSortNanos = System.nanoTime() - phaseStart;
+        }
+    }
+    snakes.addRootIfMissing();
+    if (metrics != null) {
+        int matches = 0;
+        for (int i = 0; i < snakes.count(); i++) {
+            matches += snakes.getSize(i);
+        }
+        metrics.mSnakes = snakes.count();
+        metrics.mEditDistance = oldSize + newSize - 2 * matches;
+    }
+    // A given up range is all removals and additions, and the scan of plain callbacks pairs
+    // them in quadratic time. Keyed move detection is linear, so it keeps running.
+    // 超出预算后普通callback不再检测move，否则O(N²)的扫描比diff本身还慢
+    final boolean approximate = budget.isApproximated();
+    final boolean detectMoves = config.mDetectMoves && (!approximate || oldKeys != null);
+    // the k-lines only cover the window now, so they can't be re-purposed as status arrays
+    final DiffResult result = workspace.mResult;
+    result.init(cb, snakes, workspace.mOldItemStatuses, workspace.mNewItemStatuses,
+            detectMoves, workspace.mMoveIndex, metrics, config.mContentsPool,
+            config.mContentsChunkSize);
+    result.mApproximate = approximate;
+    return result;
+}
+/**
+ * Diffs the given window of two lists whose old keys are unique, in O(N log N) regardless of
+ * the edit distance.
+ * <p>
+ * Every new item is mapped to its old position through the key. When keys are unique, the
+ * longest common subsequence of the two lists is the longest increasing subsequence of these
+ * old positions, so the result has the same edit distance as Myers'. Items on the LIS become
+ * diagonals; the other matched items are left to move detection, like Myers' additions and
+ * removals.
+ * 每个新item通过key找到旧位置，旧位置序列的最长递增子序列就是LCS
+ *
+ * @return False if an old key is not unique, in which case nothing was added to {@code out}.
+ */
+private static boolean diffUniqueKeys(long[] oldKeys, long[] newKeys, int oldListStart,
+        int oldListEnd, int newListStart, int newListEnd, DiffWorkspace workspace,
+        SnakeList out) {
+    final LongIntHashMap positions = workspace.mKeyPositions;
+    positions.clear();
+    for (int x = oldListStart; x < oldListEnd; x++) {
+        if (positions.put(oldKeys[x], x, -1) != -1) {
+            // duplicate key, Myers has to handle this one
+            return false;
+        }
+    }
+    final int newSize = newListEnd - newListStart;
+    // the k-lines are idle in this mode, borrow them
+    workspace.ensureKLines(newSize + 1);
+    // old position of each new item, -1 for additions
+    final int[] oldPositions = workspace.mForward;
+    for (int j = 0; j < newSize; j++) {
+        oldPositions[j] = positions.get(newKeys[newListStart + j], -1);
+    }
+    final int[] run = workspace.ensureScratch(0, newSize + 1);
+    final int length = longestIncreasingSubsequence(oldPositions, newSize, run,
+            workspace.mBackward);
+    // consecutive items on both axes form one diagonal
+    int k = 0;
+    while (k < length) {
+        final int first = run[k];
+        int size = 1;
+        while (k + size < length && run[k + size] == first + size
+                && oldPositions[first + size] == oldPositions[first] + size) {
+            size++;
+        }
+        out.add(oldPositions[first], newListStart + first, size, false, false);
+        k += size;
+    }
+    return true;
+}
+/**
+ * Finds a longest strictly increasing subsequence of {@code values[0, count)}, skipping
+ * negative values, in O(N log N).
+ *
+ * @param run Receives the indices of the subsequence in ascending order, at least
+ *            {@code count + 1} long
+ * @param previous Scratch of at least {@code count} ints
+ * @return The length of the subsequence
+ */
+static int longestIncreasingSubsequence(int[] values, int count, int[] run, int[] previous) {
+    // run[k] is the index ending the best increasing run of length k + 1
+    int length = 0;
+    for (int j = 0; j < count; j++) {
+        final int value = values[j];
+        if (value < 0) {
+            continue;
+        }
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (values[run[mid]] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        previous[j] = low > 0 ? run[low - 1] : -1;
+        run[low] = j;
+        if (low == length) {
+            length++;
+        }
+    }
+    // unwind the longest run into run[0, length), ascending
+    int j = length > 0 ? run[length - 1] : -1;
+    for (int k = length - 1; k >= 0; k--) {
+        run[k] = j;
+        j = previous[j];
+    }
+    return length;
+}
+/**
+ * Runs Myers' divide and conquer on the ranges pushed onto the workspace until its stack is
+ * empty, adding the non empty snakes to {@code out} in no particular order.
+ *
+ * @param oldSize The old size of the largest range on the stack
+ * @param newSize The new size of the largest range on the stack
+ */
+private static void solveRanges(Callback cb, @Nullable long[] oldKeys,
+        @Nullable long[] newKeys, int oldSize, int newSize, DiffWorkspace workspace,
+        SnakeList out, DiffBudget budget) {
     final int max = oldSize + newSize + Math.abs(oldSize - newSize);
     // allocate forward and backward k-lines. K lines are diagonal lines in the matrix. (see the
     // paper for details)
     // These arrays lines keep the max reachable position for each k-line.
-    final int[] forward = new int[max * 2];
-    final int[] backward = new int[max * 2];
-    // We pool the ranges to avoid allocations for each recursive call.
-    final List<Range> rangePool = new ArrayList<>();
-    while (!stack.isEmpty()) {
-        final Range range = stack.remove(stack.size() - 1);
-        final Snake snake = diffPartial(cb, range.oldListStart, range.oldListEnd,
-                range.newListStart, range.newListEnd, forward, backward, max);
-        if (snake != null) {
+    // The workspace only grows them, so they may be longer than max * 2.
+    workspace.ensureKLines(max * 2);
+    final int[] forward = workspace.mForward;
+    final int[] backward = workspace.mBackward;
+    // diffPartial writes the middle snake here, it is copied into the SnakeList if not empty
+    final Snake snake = workspace.mSnake;
+    while (workspace.hasRanges()) {
+        workspace.popRange();
+        final int oldListStart = workspace.rangeValue(0);
+        final int oldListEnd = workspace.rangeValue(1);
+        final int newListStart = workspace.rangeValue(2);
+        final int newListEnd = workspace.rangeValue(3);
+        if (diffPartial(cb, oldKeys, newKeys, oldListStart, oldListEnd, newListStart,
+                newListEnd, forward, backward, max, snake, budget)) {
+            pushSubRanges(workspace, snake, oldListStart, oldListEnd, newListStart,
+                    newListEnd);
             if (snake.size > 0) {
-                snakes.add(snake);
-            }
-            // offset the snake to convert its coordinates from the Range's area to global
-            snake.x += range.oldListStart;
-            snake.y += range.newListStart;
-            // add new ranges for left and right
-            final Range left = rangePool.isEmpty() ? new Range() : rangePool.remove(
-                    rangePool.size() - 1);
-            left.oldListStart = range.oldListStart;
-            left.newListStart = range.newListStart;
-            if (snake.reverse) {
-                left.oldListEnd = snake.x;
-                left.newListEnd = snake.y;
-            } else {
-                if (snake.removal) {
-                    left.oldListEnd = snake.x - 1;
-                    left.newListEnd = snake.y;
-                } else {
-                    left.oldListEnd = snake.x;
-                    left.newListEnd = snake.y - 1;
-                }
+                out.add(snake.x, snake.y, snake.size, snake.removal, snake.reverse);
             }
-            stack.add(left);
-            // re-use range for right
-            //noinspection UnnecessaryLocalVariable
-            final Range right = range;
-            if (snake.reverse) {
-                if (snake.removal) {
-                    right.oldListStart = snake.x + snake.size + 1;
-                    right.newListStart = snake.y + snake.size;
-                } else {
-                    right.oldListStart = snake.x + snake.size;
-                    right.newListStart = snake.y + snake.size + 1;
-                }
-            } else {
-                right.oldListStart = snake.x + snake.size;
-                right.newListStart = snake.y + snake.size;
-            }
-            stack.add(right);
+        }
+    }
+}
+/**
+ * Offsets the middle snake of a range to global coordinates and pushes the ranges on its left
+ * and right onto the workspace's stack (left first, so right is solved first).
+ */
+private static void pushSubRanges(DiffWorkspace workspace, Snake snake, int oldListStart,
+        int oldListEnd, int newListStart, int newListEnd) {
+    // offset the snake to convert its coordinates from the Range's area to global
+    snake.x += oldListStart;
+    snake.y += newListStart;
+    // add new ranges for left and right
+    if (snake.reverse) {
+        workspace.pushRange(oldListStart, snake.x, newListStart, snake.y);
+    } else {
+        if (snake.removal) {
+            workspace.pushRange(oldListStart, snake.x - 1, newListStart, snake.y);
         } else {
-            rangePool.add(range);
+            workspace.pushRange(oldListStart, snake.x, newListStart, snake.y - 1);
         }
     }
-    // sort snakes
-    Collections.sort(snakes, SNAKE_COMPARATOR);
-    return new DiffResult(cb, snakes, forward, backward);
+    if (snake.reverse) {
+        if (snake.removal) {
+            workspace.pushRange(snake.x + snake.size + 1, oldListEnd,
+                    snake.y + snake.size, newListEnd);
+        } else {
+            workspace.pushRange(snake.x + snake.size, oldListEnd,
+                    snake.y + snake.size + 1, newListEnd);
+        }
+    } else {
+        workspace.pushRange(snake.x + snake.size, oldListEnd,
+                snake.y + snake.size, newListEnd);
+    }
 }
-
-
-private static Snake diffPartial(Callback cb, int startOld, int endOld,
-        int startNew, int endNew, int[] forward, int[] backward, int kOffset) {
+/**
+ * Checks whether the two items are the same, comparing keys directly if the callback provided
+ * them.
+ */
+private static boolean itemsTheSame(Callback cb, @Nullable long[] oldKeys,
+        @Nullable long[] newKeys, int oldItemPosition, int newItemPosition) {
+    if (oldKeys != null) {
+        return oldKeys[oldItemPosition] == newKeys[newItemPosition];
+    }
+    return cb.areItemsTheSame(oldItemPosition, newItemPosition);
+}
+/**
+ * Counts the occurrences of the keys already in counts, other keys are not added.
+ */
+private static void countKeys(LongIntHashMap counts, long[] keys, int size) {
+    for (int i = 0; i < size; i++) {
+        final int count = counts.get(keys[i], -1);
+        if (count >= 0) {
+            counts.put(keys[i], count + 1, -1);
+        }
+    }
+}
+/**
+ * Checks whether the {@code count} items of a diagonal are the same, starting at the given
+ * positions.
+ */
+private static boolean diagonalMatches(Callback cb, @Nullable long[] oldKeys,
+        @Nullable long[] newKeys, int oldItemPosition, int newItemPosition, int count) {
+    for (int i = 0; i < count; i++) {
+        if (!itemsTheSame(cb, oldKeys, newKeys, oldItemPosition + i, newItemPosition + i)) {
+            return false;
+        }
+    }
+    return true;
+}
+/**
+ * Finds the middle snake of the given range.
+ * <p>
+ * The snake is written into {@code outSnake}, relative to the start of the range.
+ * <p>
+ * If {@code oldKeys} is not null, items are matched by comparing their keys instead of
+ * calling {@link Callback#areItemsTheSame(int, int)}. The branch is loop invariant, so the JIT
+ * keeps the keyed loop free of virtual calls.
+ *
+ * @return True if a snake was found, false if the range is empty or the budget gave it up.
+ */
+private static boolean diffPartial(Callback cb, @Nullable long[] oldKeys,
+        @Nullable long[] newKeys, int startOld, int endOld, int startNew, int endNew,
+        int[] forward, int[] backward, int kOffset, Snake outSnake, DiffBudget budget) {
     final int oldSize = endOld - startOld;
     final int newSize = endNew - startNew;
 
     // 有1个无数据，则不可能存在匹配
     if (endOld - startOld < 1 || endNew - startNew < 1) {
-        return null;
+        budget.onRangeSolved(0);
+        return false;
     }
     final int delta = oldSize - newSize;
     final int dLimit = (oldSize + newSize + 1) / 2;
@@ -107,6 +483,11 @@ private static Snake diffPartial(Callback cb, int startOld, int endOld,
     Arrays.fill(backward, kOffset - dLimit - 1 + delta, kOffset + dLimit + 1 + delta, oldSize);
     final boolean checkInFwd = delta % 2 != 0;
     for (int d = 0; d <= dLimit; d++) {
+        // 每轮d检查一次，开销可忽略
+        if (!budget.canSearch(d)) {
+            budget.onRangeSolved(d);
+            return false;
+        }
         for (int k = -d; k <= d; k += 2) {
             // find forward path
             // we can reach k from k - 1 or k + 1. Check which one is further in the graph
@@ -121,22 +502,42 @@ private static Snake diffPartial(Callback cb, int startOld, int endOld,
             }
             // set y based on x
             int y = x - k;
+            // where the diagonal of this step starts
+            final int startX = x;
             // move diagonal as long as items match
-            while (x < oldSize && y < newSize
-                    && cb.areItemsTheSame(startOld + x, startNew + y)) {
-                x++;
-                y++;
+            if (oldKeys != null) {
+                while (x < oldSize && y < newSize
+                        && oldKeys[startOld + x] == newKeys[startNew + y]) {
+                    x++;
+                    y++;
+                }
+            } else {
+                while (x < oldSize && y < newSize
+                        && cb.areItemsTheSame(startOld + x, startNew + y)) {
+                    x++;
+                    y++;
+                }
             }
             forward[kOffset + k] = x;
             if (checkInFwd && k >= delta - d + 1 && k <= delta + d - 1) {
                 if (forward[kOffset + k] >= backward[kOffset + k]) {
-                    Snake outSnake = new Snake();
-                    outSnake.x = backward[kOffset + k];
-                    outSnake.y = outSnake.x - k;
-                    outSnake.size = forward[kOffset + k] - backward[kOffset + k];
+                    // The middle snake ends where this step's diagonal does. It starts at
+                    // backward[k] like it always has, unless items between backward[k] and
+                    // the start of this step's diagonal differ: only the items either path
+                    // slid over are known to match, and with duplicate items the gap may
+                    // pair different items.
+                    int snakeX = backward[kOffset + k];
+                    if (snakeX < startX && !diagonalMatches(cb, oldKeys, newKeys,
+                            startOld + snakeX, startNew + snakeX - k, startX - snakeX)) {
+                        snakeX = startX;
+                    }
+                    outSnake.x = snakeX;
+                    outSnake.y = snakeX - k;
+                    outSnake.size = forward[kOffset + k] - snakeX;
                     outSnake.removal = removal;
                     outSnake.reverse = false;
-                    return outSnake;
+                    budget.onRangeSolved(d);
+                    return true;
                 }
             }
         }
@@ -155,23 +556,39 @@ private static Snake diffPartial(Callback cb, int startOld, int endOld,
             }
             // set y based on x
             int y = x - backwardK;
+            // where the diagonal of this step ends
+            final int endX = x;
             // move diagonal as long as items match
-            while (x > 0 && y > 0
-                    && cb.areItemsTheSame(startOld + x - 1, startNew + y - 1)) {
-                x--;
-                y--;
+            if (oldKeys != null) {
+                while (x > 0 && y > 0
+                        && oldKeys[startOld + x - 1] == newKeys[startNew + y - 1]) {
+                    x--;
+                    y--;
+                }
+            } else {
+                while (x > 0 && y > 0
+                        && cb.areItemsTheSame(startOld + x - 1, startNew + y - 1)) {
+                    x--;
+                    y--;
+                }
             }
             backward[kOffset + backwardK] = x;
             if (!checkInFwd && k + delta >= -d && k + delta <= d) {
                 if (forward[kOffset + backwardK] >= backward[kOffset + backwardK]) {
-                    Snake outSnake = new Snake();
+                    // same as above, mirrored: the snake is cut at the end of this step's
+                    // diagonal if the items up to forward[k] differ
+                    int snakeEnd = forward[kOffset + backwardK];
+                    if (snakeEnd > endX && !diagonalMatches(cb, oldKeys, newKeys,
+                            startOld + endX, startNew + endX - backwardK, snakeEnd - endX)) {
+                        snakeEnd = endX;
+                    }
                     outSnake.x = backward[kOffset + backwardK];
                     outSnake.y = outSnake.x - backwardK;
-                    outSnake.size =
-                            forward[kOffset + backwardK] - backward[kOffset + backwardK];
+                    outSnake.size = snakeEnd - outSnake.x;
                     outSnake.removal = removal;
                     outSnake.reverse = true;
-                    return outSnake;
+                    budget.onRangeSolved(d);
+                    return true;
                 }
             }
         }
@@ -0,0 +1,203 @@
+/**
+ * Configuration of a diff calculation, see {@link #calculateDiff(Callback, DiffConfig)}.
+ * <p>
+ * A config is immutable and can be shared by any number of diffs; per-call scratch memory
+ * lives in {@link DiffWorkspace}.
+ */
+public static final class DiffConfig {
+    /**
+     * The config used by {@link #calculateDiff(Callback)}, detects moves and runs on the
+     * calling thread.
+     */
+    public static final DiffConfig DEFAULT = new Builder().build();
+    /**
+     * Same as {@link #DEFAULT} without move detection.
+     */
+    public static final DiffConfig NO_MOVES = new Builder().setDetectMoves(false).build();
+    final boolean mDetectMoves;
+    @Nullable
+    final ForkJoinPool mForkJoinPool;
+    final int mParallelThreshold;
+    final int mMaxEditDistance;
+    final long mTimeBudgetNanos;
+    final boolean mMetricsEnabled;
+    final DiffStrategy mStrategy;
+    @Nullable
+    final ForkJoinPool mContentsPool;
+    final int mContentsChunkSize;
+    final boolean mTrimEnds;
+    DiffConfig(Builder builder) {
+        mDetectMoves = builder.mDetectMoves;
+        mForkJoinPool = builder.mForkJoinPool;
+        mParallelThreshold = builder.mParallelThreshold;
+        mMaxEditDistance = builder.mMaxEditDistance;
+        mTimeBudgetNanos = builder.mTimeBudgetNanos;
+        mMetricsEnabled = builder.mMetricsEnabled;
+        mStrategy = builder.mStrategy;
+        mContentsPool = builder.mContentsPool;
+        mContentsChunkSize = builder.mContentsChunkSize;
+        mTrimEnds = builder.mTrimEnds;
+    }
+    /**
+     * Builder class for {@link DiffConfig}.
+     */
+    public static final class Builder {
+        private boolean mDetectMoves = true;
+        private ForkJoinPool mForkJoinPool;
+        private int mParallelThreshold;
+        private int mMaxEditDistance = Integer.MAX_VALUE;
+        private long mTimeBudgetNanos;
+        private boolean mMetricsEnabled;
+        private DiffStrategy mStrategy = DiffStrategy.MYERS;
+        private ForkJoinPool mContentsPool;
+        private int mContentsChunkSize;
+        private boolean mTrimEnds = true;
+        /**
+         * @param detectMoves True if DiffUtil should try to detect moved items, false
+         *                    otherwise. Defaults to true.
+         * @return this
+         */
+        public Builder setDetectMoves(boolean detectMoves) {
+            mDetectMoves = detectMoves;
+            return this;
+        }
+        /**
+         * Solves the independent sub-ranges of Myers' divide and conquer on the given pool.
+         * <p>
+         * Once the middle snake of a range is found, the ranges on its left and right are
+         * forked as separate tasks while they are larger than {@code threshold} items (old
+         * plus new). Smaller ranges are solved sequentially. The result is identical to the
+         * sequential one.
+         * <p>
+         * The Callback is called from the pool's threads, so it must be safe to read from
+         * several threads at once.
+         *
+         * @param pool The pool to fork the ranges on, null to run on the calling thread.
+         * @param threshold Ranges with at most this many items are not split further.
+         * @return this
+         */
+        public Builder setParallelism(@Nullable ForkJoinPool pool, int threshold) {
+            if (threshold < 1) {
+                throw new IllegalArgumentException("threshold must be positive");
+            }
+            mForkJoinPool = pool;
+            mParallelThreshold = threshold;
+            return this;
+        }
+        /**
+         * Limits how far Myers' search may go for a single range.
+         * <p>
+         * A range whose middle snake needs more than {@code maxEditDistance} steps is not
+         * searched any further and is dispatched as a removal of its old items followed by an
+         * insertion of its new items. This bounds the cost of diffing two large lists which
+         * are nearly unrelated. The result is then flagged by
+         * {@link DiffResult#isApproximate()}, which also explains how its moves are
+         * detected.
+         * <p>
+         * Only Myers' search knows the d of a range. {@link DiffStrategy#PATIENCE} and
+         * {@link DiffStrategy#HISTOGRAM} check the difference of the sizes of the ranges they
+         * split on anchors, a lower bound of their d, so such a range may be split further
+         * than the limit would allow Myers'; the ranges they hand to Myers' are checked on
+         * the real d. {@link DiffStrategy#UNIQUE_KEYS} takes O(N log N) whatever the d and is
+         * not limited.
+         *
+         * @param maxEditDistance The maximum d of a range, defaults to no limit.
+         * @return this
+         */
+        public Builder setMaxEditDistance(int maxEditDistance) {
+            if (maxEditDistance < 0) {
+                throw new IllegalArgumentException("maxEditDistance cannot be negative");
+            }
+            mMaxEditDistance = maxEditDistance;
+            return this;
+        }
+        /**
+         * Gives every diff a deadline, measured from the start of the calculation.
+         * <p>
+         * Once it has passed, the range being searched and every range after it fall back to
+         * removals and insertions, so the diff returns right away with a result flagged by
+         * {@link DiffResult#isApproximate()}. Content checks still run, move detection only
+         * for a {@link KeyedCallback}.
+         *
+         * @param duration The time budget, 0 for no deadline (the default).
+         * @param unit The unit of {@code duration}
+         * @return this
+         */
+        public Builder setTimeBudget(long duration, TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException("duration cannot be negative");
+            }
+            mTimeBudgetNanos = unit.toNanos(duration);
+            return this;
+        }
+        /**
+         * Collects a {@link DiffMetrics} for every diff, available through
+         * {@link DiffResult#getMetrics()}. Disabled by default, in which case the diff does
+         * not pay anything for it.
+         *
+         * @param enabled True to collect metrics
+         * @return this
+         */
+        public Builder setMetricsEnabled(boolean enabled) {
+            mMetricsEnabled = enabled;
+            return this;
+        }
+        /**
+         * @param strategy How to find the matching diagonals, one of
+         *                 {@link DiffStrategy#MYERS} (the default),
+         *                 {@link DiffStrategy#UNIQUE_KEYS}, {@link DiffStrategy#PATIENCE},
+         *                 {@link DiffStrategy#HISTOGRAM} or a custom subclass.
+         * @return this
+         */
+        public Builder setStrategy(DiffStrategy strategy) {
+            if (strategy == null) {
+                throw new IllegalArgumentException("strategy cannot be null");
+            }
+            mStrategy = strategy;
+            return this;
+        }
+        /**
+         * Compares the contents of the matched items on the given pool.
+         * <p>
+         * Once the snakes are found, every item on their diagonals is checked with
+         * {@link Callback#areContentsTheSame(int, int)}. For large, mostly unchanged lists with
+         * costly equality checks this can take longer than the search itself. The diagonal
+         * items are split into chunks of at least {@code chunkSize} items, each writing to its
+         * own positions of the status arrays. The result is identical to the sequential one.
+         * <p>
+         * The Callback is called from the pool's threads, so it must be safe to read from
+         * several threads at once.
+         *
+         * @param pool The pool to compare the contents on, null to run on the calling thread.
+         * @param chunkSize Diagonals with at most this many items are not split further.
+         * @return this
+         */
+        public Builder setContentComparisonParallelism(@Nullable ForkJoinPool pool,
+                int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("chunkSize must be positive");
+            }
+            mContentsPool = pool;
+            mContentsChunkSize = chunkSize;
+            return this;
+        }
+        /**
+         * @param trimEnds False to run the search on the whole lists instead of skipping
+         *                 their common head and tail, which must give the same result.
+         * @return this
+         */
+        @VisibleForTesting
+        Builder setTrimEnds(boolean trimEnds) {
+            mTrimEnds = trimEnds;
+            return this;
+        }
+        /**
+         * Creates a {@link DiffConfig} with the given parameters.
+         *
+         * @return A new DiffConfig.
+         */
+        public DiffConfig build() {
+            return new DiffConfig(this);
+        }
+    }
+}
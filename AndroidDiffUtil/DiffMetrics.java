@@ -0,0 +1,213 @@
+/**
+ * Per-diff counters and phase timings, enabled by
+ * {@link DiffConfig.Builder#setMetricsEnabled(boolean)} and read through
+ * {@link DiffResult#getMetrics()}.
+ * <p>
+ * When metrics are disabled, no wrapper callback is installed and no timestamps are taken, so
+ * the diff runs exactly the same code as before.
+ * <p>
+ * Callback invocations are counted by wrapping the Callback. With a {@link KeyedCallback},
+ * the key comparisons of Myers' loop are not calls and are not counted;
+ * {@link #getAreItemsTheSameCount()} then only covers move detection fallbacks.
+ * 打开之后才会包一层计数的Callback，关闭时没有任何额外开销
+ */
+public static class DiffMetrics {
+    final AtomicLong mAreItemsTheSame = new AtomicLong();
+    final AtomicLong mAreContentsTheSame = new AtomicLong();
+    final AtomicLong mGetChangePayload = new AtomicLong();
+    // written under the lock, ranges can be solved by several fork-join workers
+    private int mRanges;
+    private int mMaxSearchDepth;
+    int mSnakes;
+    int mEditDistance;
+    long mMyersNanos;
+    long mSortNanos;
+    long mFindMatchingItemsNanos;
+    long mMoveMatchingNanos;
+    long mDispatchNanos;
+    DiffMetrics() {
+    }
+    /**
+     * Wraps the callback so that its invocations are counted.
+     */
+    Callback wrap(Callback callback) {
+        if (callback instanceof KeyedCallback) {
+            return new CountingKeyedCallback((KeyedCallback) callback, this);
+        }
+        return new CountingCallback(callback, this);
+    }
+    /**
+     * Called once per range by diffPartial.
+     *
+     * @param d The depth at which the range's middle snake was found, or given up
+     */
+    synchronized void onRangeSolved(int d) {
+        mRanges++;
+        if (d > mMaxSearchDepth) {
+            mMaxSearchDepth = d;
+        }
+    }
+    /**
+     * @return Number of removals plus insertions between the two lists, before moves are
+     * detected.
+     */
+    public int getEditDistance() {
+        return mEditDistance;
+    }
+    /**
+     * @return The largest d any range reached in Myers' loop. Roughly half of the edit distance
+     * of the range it was reached in.
+     */
+    public synchronized int getMaxSearchDepth() {
+        return mMaxSearchDepth;
+    }
+    /**
+     * @return Number of ranges Myers' divide and conquer processed, including empty ones.
+     */
+    public synchronized int getRangeCount() {
+        return mRanges;
+    }
+    /**
+     * @return Number of snakes in the result, including the root snake.
+     */
+    public int getSnakeCount() {
+        return mSnakes;
+    }
+    public long getAreItemsTheSameCount() {
+        return mAreItemsTheSame.get();
+    }
+    public long getAreContentsTheSameCount() {
+        return mAreContentsTheSame.get();
+    }
+    /**
+     * @return Calls to getChangePayload so far, dispatching the result adds to it.
+     */
+    public long getChangePayloadCount() {
+        return mGetChangePayload.get();
+    }
+    /**
+     * @return Time spent finding the snakes with the configured {@link DiffStrategy}, Myers'
+     * by default, including the prefix / suffix trimming.
+     */
+    public long getMyersNanos() {
+        return mMyersNanos;
+    }
+    public long getSortNanos() {
+        return mSortNanos;
+    }
+    /**
+     * @return Time spent in findMatchingItems, which includes move matching.
+     */
+    public long getFindMatchingItemsNanos() {
+        return mFindMatchingItemsNanos;
+    }
+    /**
+     * @return Time spent pairing moves through the key index. Moves of callbacks without keys
+     * are matched while the diagonals are flagged and only show up in
+     * {@link #getFindMatchingItemsNanos()}.
+     */
+    public long getMoveMatchingNanos() {
+        return mMoveMatchingNanos;
+    }
+    /**
+     * @return Time spent in the last dispatchUpdatesTo call, 0 if it was not dispatched yet.
+     */
+    public long getDispatchNanos() {
+        return mDispatchNanos;
+    }
+    @Override
+    public String toString() {
+        return "DiffMetrics{editDistance=" + mEditDistance
+                + ", maxSearchDepth=" + getMaxSearchDepth()
+                + ", ranges=" + getRangeCount()
+                + ", snakes=" + mSnakes
+                + ", areItemsTheSame=" + getAreItemsTheSameCount()
+                + ", areContentsTheSame=" + getAreContentsTheSameCount()
+                + ", getChangePayload=" + getChangePayloadCount()
+                + ", myersNs=" + mMyersNanos
+                + ", sortNs=" + mSortNanos
+                + ", findMatchingItemsNs=" + mFindMatchingItemsNanos
+                + ", moveMatchingNs=" + mMoveMatchingNanos
+                + ", dispatchNs=" + mDispatchNanos + "}";
+    }
+    private static class CountingCallback extends Callback {
+        private final Callback mWrapped;
+        private final DiffMetrics mMetrics;
+        CountingCallback(Callback wrapped, DiffMetrics metrics) {
+            mWrapped = wrapped;
+            mMetrics = metrics;
+        }
+        @Override
+        public int getOldListSize() {
+            return mWrapped.getOldListSize();
+        }
+        @Override
+        public int getNewListSize() {
+            return mWrapped.getNewListSize();
+        }
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            mMetrics.mAreItemsTheSame.incrementAndGet();
+            return mWrapped.areItemsTheSame(oldItemPosition, newItemPosition);
+        }
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            mMetrics.mAreContentsTheSame.incrementAndGet();
+            return mWrapped.areContentsTheSame(oldItemPosition, newItemPosition);
+        }
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            mMetrics.mGetChangePayload.incrementAndGet();
+            return mWrapped.getChangePayload(oldItemPosition, newItemPosition);
+        }
+    }
+    private static class CountingKeyedCallback extends KeyedCallback {
+        private final KeyedCallback mWrapped;
+        private final DiffMetrics mMetrics;
+        CountingKeyedCallback(KeyedCallback wrapped, DiffMetrics metrics) {
+            mWrapped = wrapped;
+            mMetrics = metrics;
+        }
+        @Override
+        public int getOldListSize() {
+            return mWrapped.getOldListSize();
+        }
+        @Override
+        public int getNewListSize() {
+            return mWrapped.getNewListSize();
+        }
+        @Override
+        public long[] getOldItemKeys() {
+            return mWrapped.getOldItemKeys();
+        }
+        @Override
+        public long[] getNewItemKeys() {
+            return mWrapped.getNewItemKeys();
+        }
+        @Override
+        public long[] getOldContentHashes() {
+            return mWrapped.getOldContentHashes();
+        }
+        @Override
+        public long[] getNewContentHashes() {
+            return mWrapped.getNewContentHashes();
+        }
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            mMetrics.mAreItemsTheSame.incrementAndGet();
+            return mWrapped.areItemsTheSame(oldItemPosition, newItemPosition);
+        }
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            mMetrics.mAreContentsTheSame.incrementAndGet();
+            return mWrapped.areContentsTheSame(oldItemPosition, newItemPosition);
+        }
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            mMetrics.mGetChangePayload.incrementAndGet();
+            return mWrapped.getChangePayload(oldItemPosition, newItemPosition);
+        }
+    }
+}
@@ -7,6 +7,11 @@
  * {@link RecyclerView.Adapter} via {@link #dispatchUpdatesTo(RecyclerView.Adapter)}.
  */
 public static class DiffResult {
+    /**
+     * Signifies an item not present in the list, returned by the position conversion methods
+     * for removed and added items.
+     */
+    public static final int NO_POSITION = -1;
     /**
      * While reading the flags below, keep in mind that when multiple items move in a list,
      * Myers's may pick any of them as the anchor item and consider that one NOT_CHANGED while
@@ -38,17 +43,29 @@ public static class DiffResult {
     private static final int FLAG_OFFSET = 5;
     private static final int FLAG_MASK = (1 << FLAG_OFFSET) - 1;
     // The Myers' snakes. At this point, we only care about their diagonal sections.
-    private final List<Snake> mSnakes;
+    // The fields are not final since a DiffWorkspace re-initializes its result for every diff.
+    private SnakeList mSnakes;
     // The list to keep oldItemStatuses. As we traverse old items, we assign flags to them
     // which also includes whether they were a real removal or a move (and its new index).
-    private final int[] mOldItemStatuses;
+    private int[] mOldItemStatuses;
     // The list to keep newItemStatuses. As we traverse new items, we assign flags to them
     // which also includes whether they were a real addition or a move(and its old index).
-    private final int[] mNewItemStatuses;
+    private int[] mNewItemStatuses;
     // The callback that was given to calcualte diff method.
-    private final Callback mCallback;
-    private final int mOldListSize;
-    private final int mNewListSize;
+    private Callback mCallback;
+    private int mOldListSize;
+    private int mNewListSize;
+    private boolean mDetectMoves;
+    // Re-used by findMovesByKey, may be null
+    private MoveIndex mMoveIndex;
+    // number of diagonal items before each snake, so that markDiagonals can find the snake of
+    // its first item by binary search
+    private int[] mDiagonalStarts = new int[0];
+    // True if the diff budget ran out and some ranges were not searched
+    boolean mApproximate;
+    // null unless DiffConfig enabled metrics
+    @Nullable
+    private DiffMetrics mMetrics;
     /**
      * @param callback The callback that was used to calculate the diff
      * @param snakes The list of Myers' snakes
@@ -56,33 +73,92 @@ public static class DiffResult {
      * @param newItemStatuses An int[] that can be re-purposed to keep metadata
      * @param detectMoves True if this DiffResult will try to detect moved items
      */
-    DiffResult(Callback callback, List<Snake> snakes, int[] oldItemStatuses,
-            int[] newItemStatuses) {
+    DiffResult(Callback callback, SnakeList snakes, int[] oldItemStatuses,
+            int[] newItemStatuses, boolean detectMoves) {
+        init(callback, snakes, oldItemStatuses, newItemStatuses, detectMoves, null, null, null,
+                0);
+    }
+    /**
+     * Creates an empty result, see {@link DiffWorkspace}.
+     */
+    DiffResult() {
+    }
+    /**
+     * @param callback The callback that was used to calculate the diff
+     * @param snakes The list of Myers' snakes
+     * @param oldItemStatuses An int[] of at least the old list size, may be longer
+     * @param newItemStatuses An int[] of at least the new list size, may be longer
+     * @param detectMoves True if this DiffResult will try to detect moved items
+     * @param moveIndex A MoveIndex to re-use for keyed move detection, may be null
+     * @param metrics Receives the timings of findMatchingItems and dispatch, may be null
+     * @param contentsPool The pool to compare the diagonal items on, may be null
+     * @param contentsChunkSize The smallest chunk of diagonal items to fork
+     */
+    void init(Callback callback, SnakeList snakes, int[] oldItemStatuses,
+            int[] newItemStatuses, boolean detectMoves, @Nullable MoveIndex moveIndex,
+            @Nullable DiffMetrics metrics, @Nullable ForkJoinPool contentsPool,
+            int contentsChunkSize) {
         mSnakes = snakes;
+        mCallback = callback;
+        mOldListSize = callback.getOldListSize();
+        mNewListSize = callback.getNewListSize();
         mOldItemStatuses = oldItemStatuses;
         mNewItemStatuses = newItemStatuses;
-        Arrays.fill(mOldItemStatuses, 0);
-        Arrays.fill(mNewItemStatuses, 0);
+        Arrays.fill(mOldItemStatuses, 0, mOldListSize, 0);
+        Arrays.fill(mNewItemStatuses, 0, mNewListSize, 0);
+        mDetectMoves = detectMoves;
+        mMoveIndex = moveIndex;
+        mApproximate = false;
+        mMetrics = metrics;
+        // 注释很清楚了，为了循环运行，增加一个头部，类似OC NSNotFound
+        mSnakes.addRootIfMissing();
+        final long start = metrics != null ? System.nanoTime() : 0;
+        findMatchingItems(contentsPool, contentsChunkSize);
+        if (metrics != null) {
+            metrics.mFindMatchingItemsNanos = System.nanoTime() - start;
+        }
+    }
+    /**
+     * Initializes a result whose statuses were already computed, e.g. stitched together from
+     * the diffs of several sub-lists by {@link SectionedDiff}. Skips findMatchingItems.
+     *
+     * @param callback The callback that acts as a gateway to the whole lists
+     * @param snakes The sorted diagonals of the whole lists
+     * @param oldItemStatuses The statuses of the old items, see {@link #copyStatusesTo}
+     * @param newItemStatuses The statuses of the new items
+     * @param detectMoves True if the statuses may contain moves
+     */
+    void initFromStatuses(Callback callback, SnakeList snakes, int[] oldItemStatuses,
+            int[] newItemStatuses, boolean detectMoves) {
+        mSnakes = snakes;
         mCallback = callback;
         mOldListSize = callback.getOldListSize();
         mNewListSize = callback.getNewListSize();
-        addRootSnake(); // 注释很清楚了，为了循环运行，增加一个头部，类似OC NSNotFound
-        findMatchingItems();
+        mOldItemStatuses = oldItemStatuses;
+        mNewItemStatuses = newItemStatuses;
+        mDetectMoves = detectMoves;
+        mMoveIndex = null;
+        mApproximate = false;
+        mMetrics = null;
+        mSnakes.addRootIfMissing();
     }
     /**
-     * We always add a Snake to 0/0 so that we can run loops from end to beginning and be done
-     * when we run out of snakes.
+     * Copies the statuses of this result into the statuses of a larger list which contains the
+     * old list at {@code oldOffset} and the new list at {@code newOffset}. The positions that
+     * the statuses point to are shifted by the offset of the other list.
      */
-    private void addRootSnake() {
-        Snake firstSnake = mSnakes.isEmpty() ? null : mSnakes.get(0);
-        if (firstSnake == null || firstSnake.x != 0 || firstSnake.y != 0) {
-            Snake root = new Snake();
-            root.x = 0;
-            root.y = 0;
-            root.removal = false;
-            root.size = 0;
-            root.reverse = false;
-            mSnakes.add(0, root);
+    void copyStatusesTo(int[] oldItemStatuses, int oldOffset, int[] newItemStatuses,
+            int newOffset) {
+        final int newShift = newOffset << FLAG_OFFSET;
+        for (int i = 0; i < mOldListSize; i++) {
+            final int status = mOldItemStatuses[i];
+            // 0 means removed, there is no position to shift
+            oldItemStatuses[oldOffset + i] = status == 0 ? 0 : status + newShift;
+        }
+        final int oldShift = oldOffset << FLAG_OFFSET;
+        for (int i = 0; i < mNewListSize; i++) {
+            final int status = mNewItemStatuses[i];
+            newItemStatuses[newOffset + i] = status == 0 ? 0 : status + oldShift;
         }
     }
     /**
@@ -96,26 +172,168 @@ public static class DiffResult {
      * the statuses maps. DiffResult uses this pre-calculated information while dispatching
      * the updates (which is probably being called on the main thread).
      */
-    private void findMatchingItems() {
+    private void findMatchingItems(@Nullable ForkJoinPool contentsPool,
+            int contentsChunkSize) {
+        // Diagonals first: move detection only reads and writes the statuses of removals /
+        // additions, so it doesn't matter when the diagonal items were compared.
+        final int diagonalItems = countDiagonalItems();
+        if (contentsPool != null && diagonalItems > contentsChunkSize) {
+            contentsPool.invoke(new ContentsTask(this, 0, diagonalItems, contentsChunkSize));
+        } else {
+            markDiagonals(0, diagonalItems);
+        }
+        if (!mDetectMoves) {
+            return;
+        }
+        if (mCallback instanceof KeyedCallback) {
+            final long start = mMetrics != null ? System.nanoTime() : 0;
+            findMovesByKey((KeyedCallback) mCallback);
+            if (mMetrics != null) {
+                mMetrics.mMoveMatchingNanos = System.nanoTime() - start;
+            }
+            return;
+        }
         int posOld = mOldListSize;
         int posNew = mNewListSize;
         // traverse the matrix from right bottom to 0,0.
-        for (int i = mSnakes.size() - 1; i >= 0; i--) {
-            final Snake snake = mSnakes.get(i);
-            final int endX = snake.x + snake.size;
-            final int endY = snake.y + snake.size;
-            for (int j = 0; j < snake.size; j++) {
+        for (int i = mSnakes.count() - 1; i >= 0; i--) {
+            final int snakeX = mSnakes.getX(i);
+            final int snakeY = mSnakes.getY(i);
+            final int snakeSize = mSnakes.getSize(i);
+            final int endX = snakeX + snakeSize;
+            final int endY = snakeY + snakeSize;
+            while (posOld > endX) {
+                // this is a removal. Check remaining snakes to see if this was added before
+                findAddition(posOld, posNew, i);
+                posOld--;
+            }
+            while (posNew > endY) {
+                // this is an addition. Check remaining snakes to see if this was removed
+                // before
+                findRemoval(posOld, posNew, i);
+                posNew--;
+            }
+            posOld = snakeX;
+            posNew = snakeY;
+        }
+    }
+    private int countDiagonalItems() {
+        final int snakeCount = mSnakes.count();
+        if (mDiagonalStarts.length < snakeCount + 1) {
+            mDiagonalStarts = new int[snakeCount + 1];
+        }
+        int count = 0;
+        for (int i = 0; i < snakeCount; i++) {
+            mDiagonalStarts[i] = count;
+            count += mSnakes.getSize(i);
+        }
+        mDiagonalStarts[snakeCount] = count;
+        return count;
+    }
+    /**
+     * Finds the snake of a diagonal item: the last snake which starts at or before it, since
+     * the next one starts after it.
+     */
+    private int findDiagonalSnake(int item) {
+        int low = 0;
+        int high = mSnakes.count() - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (mDiagonalStarts[middle] <= item) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+    /**
+     * Flags the diagonal items as changed / not changed.
+     * <p>
+     * The items are numbered along the snakes, in order, so that a range of them can be
+     * handed to a {@link ContentsTask}. Different ranges write different positions.
+     *
+     * @param from The first diagonal item, inclusive
+     * @param to The last diagonal item, exclusive
+     */
+    void markDiagonals(int from, int to) {
+        // every chunk of a ContentsTask starts here, don't scan the snakes before it
+        int snakeIndex = findDiagonalSnake(from);
+        int snakeStart = mDiagonalStarts[snakeIndex];
+        int item = from;
+        while (item < to) {
+            final int snakeX = mSnakes.getX(snakeIndex);
+            final int snakeY = mSnakes.getY(snakeIndex);
+            final int snakeEnd = Math.min(to - snakeStart, mSnakes.getSize(snakeIndex));
+            for (int j = item - snakeStart; j < snakeEnd; j++) {
                 // matching items. Check if it is changed or not
-                final int oldItemPos = snake.x + j;
-                final int newItemPos = snake.y + j;
+                final int oldItemPos = snakeX + j;
+                final int newItemPos = snakeY + j;
                 final boolean theSame = mCallback
                         .areContentsTheSame(oldItemPos, newItemPos);
                 final int changeFlag = theSame ? FLAG_NOT_CHANGED : FLAG_CHANGED;
                 mOldItemStatuses[oldItemPos] = (newItemPos << FLAG_OFFSET) | changeFlag;
                 mNewItemStatuses[newItemPos] = (oldItemPos << FLAG_OFFSET) | changeFlag;
             }
-            posOld = snake.x;
-            posNew = snake.y;
+            item = snakeStart + snakeEnd;
+            snakeStart += mSnakes.getSize(snakeIndex);
+            snakeIndex++;
+        }
+    }
+    /**
+     * Pairs removals and additions with equal keys into moves.
+     * <p>
+     * Visits the removals / additions in the same order as {@link #findAddition(int, int, int)}
+     * and {@link #findRemoval(int, int, int)} and writes the same flags, but looks the
+     * candidates up in a {@link MoveIndex} instead of scanning every earlier snake, so the
+     * cost is close to linear in the list sizes.
+     */
+    private void findMovesByKey(KeyedCallback callback) {
+        final long[] oldKeys = callback.getOldItemKeys();
+        final long[] newKeys = callback.getNewItemKeys();
+        final MoveIndex index = mMoveIndex != null ? mMoveIndex : new MoveIndex();
+        index.build(oldKeys, newKeys, mOldItemStatuses, mNewItemStatuses, mOldListSize,
+                mNewListSize);
+        int posOld = mOldListSize;
+        int posNew = mNewListSize;
+        for (int i = mSnakes.count() - 1; i >= 0; i--) {
+            final int snakeX = mSnakes.getX(i);
+            final int snakeY = mSnakes.getY(i);
+            final int snakeSize = mSnakes.getSize(i);
+            final int endX = snakeX + snakeSize;
+            final int endY = snakeY + snakeSize;
+            while (posOld > endX) {
+                final int oldPos = posOld - 1;
+                if (mOldItemStatuses[oldPos] == 0) {
+                    // removal, was it added to an earlier position?
+                    final int newPos = index.findAddition(oldKeys[oldPos], posNew,
+                            mNewItemStatuses);
+                    if (newPos >= 0) {
+                        final int changeFlag = mCallback.areContentsTheSame(oldPos, newPos)
+                                ? FLAG_MOVED_NOT_CHANGED : FLAG_MOVED_CHANGED;
+                        mOldItemStatuses[oldPos] = (newPos << FLAG_OFFSET) | FLAG_IGNORE;
+                        mNewItemStatuses[newPos] = (oldPos << FLAG_OFFSET) | changeFlag;
+                    }
+                }
+                posOld--;
+            }
+            while (posNew > endY) {
+                final int newPos = posNew - 1;
+                if (mNewItemStatuses[newPos] == 0) {
+                    // addition, was it removed from an earlier position?
+                    final int oldPos = index.findRemoval(newKeys[newPos], posOld,
+                            mOldItemStatuses);
+                    if (oldPos >= 0) {
+                        final int changeFlag = mCallback.areContentsTheSame(oldPos, newPos)
+                                ? FLAG_MOVED_NOT_CHANGED : FLAG_MOVED_CHANGED;
+                        mNewItemStatuses[newPos] = (oldPos << FLAG_OFFSET) | FLAG_IGNORE;
+                        mOldItemStatuses[oldPos] = (newPos << FLAG_OFFSET) | changeFlag;
+                    }
+                }
+                posNew--;
+            }
+            posOld = snakeX;
+            posNew = snakeY;
         }
     }
     private void findAddition(int x, int y, int snakeIndex) {
@@ -156,13 +374,17 @@ public static class DiffResult {
             curY = y;
         }
         for (int i = snakeIndex; i >= 0; i--) {
-            final Snake snake = mSnakes.get(i);
-            final int endX = snake.x + snake.size;
-            final int endY = snake.y + snake.size;
+            final int snakeX = mSnakes.getX(i);
+            final int snakeY = mSnakes.getY(i);
+            final int snakeSize = mSnakes.getSize(i);
+            final int endX = snakeX + snakeSize;
+            final int endY = snakeY + snakeSize;
             if (removal) {
                 // check removals for a match
                 for (int pos = curX - 1; pos >= endX; pos--) {
-                    if (mCallback.areItemsTheSame(pos, myItemPos)) {
+                    // skip removals which were already paired with a latter addition
+                    if (mOldItemStatuses[pos] == 0
+                            && mCallback.areItemsTheSame(pos, myItemPos)) {
                         // found!
                         final boolean theSame = mCallback.areContentsTheSame(pos, myItemPos);
                         final int changeFlag = theSame ? FLAG_MOVED_NOT_CHANGED
@@ -175,7 +397,8 @@ public static class DiffResult {
             } else {
                 // check for additions for a match
                 for (int pos = curY - 1; pos >= endY; pos--) {
-                    if (mCallback.areItemsTheSame(myItemPos, pos)) {
+                    if (mNewItemStatuses[pos] == 0
+                            && mCallback.areItemsTheSame(myItemPos, pos)) {
                         // found
                         final boolean theSame = mCallback.areContentsTheSame(myItemPos, pos);
                         final int changeFlag = theSame ? FLAG_MOVED_NOT_CHANGED
@@ -186,8 +409,8 @@ public static class DiffResult {
                     }
                 }
             }
-            curX = snake.x;
-            curY = snake.y;
+            curX = snakeX;
+            curY = snakeY;
         }
         return false;
     }
@@ -252,6 +475,39 @@ public static class DiffResult {
      * @see #dispatchUpdatesTo(RecyclerView.Adapter)
      */
     public void dispatchUpdatesTo(ListUpdateCallback updateCallback) {
+        dispatchUpdatesTo(updateCallback, null);
+    }
+    /**
+     * Dispatches update operations to the given Callback, reporting each run of neighbouring
+     * changed items as a single {@link ListUpdateCallback#onChanged(int, int, Object)}.
+     * <p>
+     * {@link BatchingListUpdateCallback} only merges changes whose payloads are the same
+     * object. Here the payloads of a run are merged with the given combiner instead, and they
+     * are only computed when the run is dispatched. Changes of moved items are still
+     * dispatched one by one, right after their move.
+     *
+     * @param updateCallback The callback to receive the update operations.
+     * @param payloadCombiner Merges the payloads of a run, null to dispatch changes one by one.
+     * @see #dispatchUpdatesTo(ListUpdateCallback)
+     */
+    public void dispatchUpdatesTo(ListUpdateCallback updateCallback,
+            @Nullable PayloadCombiner payloadCombiner) {
+        // These are add/remove ops that are converted to moves. We track their positions until
+        // their respective update operations are processed.
+        dispatchUpdatesTo(updateCallback, payloadCombiner, mDetectMoves
+                ? new PostponedUpdates(mOldListSize, mNewListSize) : null);
+    }
+    /**
+     * Dispatches update operations, tracking the postponed ones of moves in the given
+     * postponedUpdates.
+     *
+     * @param postponedUpdates Tracks the postponed updates, null when moves are not detected.
+     */
+    @VisibleForTesting
+    void dispatchUpdatesTo(ListUpdateCallback updateCallback,
+            @Nullable PayloadCombiner payloadCombiner,
+            @Nullable PostponedUpdates postponedUpdates) {
+        final long start = mMetrics != null ? System.nanoTime() : 0;
         final BatchingListUpdateCallback batchingCallback;
         if (updateCallback instanceof BatchingListUpdateCallback) {
             batchingCallback = (BatchingListUpdateCallback) updateCallback;
@@ -262,50 +518,603 @@ public static class DiffResult {
             //noinspection UnusedAssignment
             updateCallback = batchingCallback;
         }
-        // These are add/remove ops that are converted to moves. We track their positions until
-        // their respective update operations are processed.
-        final List<PostponedUpdate> postponedUpdates = new ArrayList<>();
         int posOld = mOldListSize;
         int posNew = mNewListSize;
-        for (int snakeIndex = mSnakes.size() - 1; snakeIndex >= 0; snakeIndex--) {
-            final Snake snake = mSnakes.get(snakeIndex);
-            final int snakeSize = snake.size;
-            final int endX = snake.x + snakeSize;
-            final int endY = snake.y + snakeSize;
+        for (int snakeIndex = mSnakes.count() - 1; snakeIndex >= 0; snakeIndex--) {
+            final int snakeX = mSnakes.getX(snakeIndex);
+            final int snakeY = mSnakes.getY(snakeIndex);
+            final int snakeSize = mSnakes.getSize(snakeIndex);
+            final int endX = snakeX + snakeSize;
+            final int endY = snakeY + snakeSize;
             if (endX < posOld) {
-                batchingCallback.onRemoved(endX, posOld - endX);
+                dispatchRemovals(postponedUpdates, batchingCallback, endX, posOld - endX, endX);
             }
             if (endY < posNew) {
-                batchingCallback.onInserted(endX, posNew - endY);
+                dispatchAdditions(postponedUpdates, batchingCallback, endX, posNew - endY,
+                        endY);
             }
-            for (int i = snakeSize - 1; i >= 0; i--) {
-                if ((mOldItemStatuses[snake.x + i] & FLAG_MASK) == FLAG_CHANGED) {
-                    batchingCallback.onChanged(snake.x + i, 1,
-                            mCallback.getChangePayload(snake.x + i, snake.y + i));
+            if (payloadCombiner != null) {
+                dispatchChangedRanges(batchingCallback, payloadCombiner, snakeX, snakeY,
+                        snakeSize);
+            } else {
+                for (int i = snakeSize - 1; i >= 0; i--) {
+                    if ((mOldItemStatuses[snakeX + i] & FLAG_MASK) == FLAG_CHANGED) {
+                        batchingCallback.onChanged(snakeX + i, 1,
+                                mCallback.getChangePayload(snakeX + i, snakeY + i));
+                    }
                 }
             }
-            posOld = snake.x;
-            posNew = snake.y;
+            posOld = snakeX;
+            posNew = snakeY;
         }
         batchingCallback.dispatchLastEvent();
+        if (mMetrics != null) {
+            mMetrics.mDispatchNanos = System.nanoTime() - start;
+        }
+    }
+    /**
+     * Dispatches the changed items of a snake, one onChanged per run of neighbours, from the
+     * last run to the first like the per item loop.
+     */
+    private void dispatchChangedRanges(ListUpdateCallback updateCallback,
+            PayloadCombiner payloadCombiner, int snakeX, int snakeY, int snakeSize) {
+        int i = snakeSize - 1;
+        while (i >= 0) {
+            if ((mOldItemStatuses[snakeX + i] & FLAG_MASK) != FLAG_CHANGED) {
+                i--;
+                continue;
+            }
+            final int last = i;
+            while (i > 0 && (mOldItemStatuses[snakeX + i - 1] & FLAG_MASK) == FLAG_CHANGED) {
+                i--;
+            }
+            final int first = i;
+            // payloads are only asked for now, and not at all past a full rebind
+            Object payload = mCallback.getChangePayload(snakeX + first, snakeY + first);
+            for (int j = first + 1; j <= last && payload != null; j++) {
+                payload = payloadCombiner.combine(payload,
+                        mCallback.getChangePayload(snakeX + j, snakeY + j));
+            }
+            updateCallback.onChanged(snakeX + first, last - first + 1, payload);
+            i--;
+        }
+    }
+    private void dispatchAdditions(PostponedUpdates postponedUpdates,
+            ListUpdateCallback updateCallback, int start, int count, int globalIndex) {
+        if (!mDetectMoves) {
+            updateCallback.onInserted(start, count);
+            return;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            final int status = mNewItemStatuses[globalIndex + i] & FLAG_MASK;
+            switch (status) {
+                case 0: // real addition
+                    updateCallback.onInserted(start, 1);
+                    postponedUpdates.offsetAll(1);
+                    break;
+                case FLAG_MOVED_CHANGED:
+                case FLAG_MOVED_NOT_CHANGED:
+                    final int pos = mNewItemStatuses[globalIndex + i] >> FLAG_OFFSET;
+                    final int currentPos = postponedUpdates.remove(pos, true);
+                    // the item was moved from that position
+                    //noinspection ConstantConditions
+                    updateCallback.onMoved(currentPos, start);
+                    if (status == FLAG_MOVED_CHANGED) {
+                        // also dispatch a change
+                        updateCallback.onChanged(start, 1,
+                                mCallback.getChangePayload(pos, globalIndex + i));
+                    }
+                    break;
+                case FLAG_IGNORE: // ignoring this
+                    postponedUpdates.add(globalIndex + i, start, false);
+                    break;
+                default:
+                    throw new IllegalStateException(
+                            "unknown flag for pos " + (globalIndex + i) + " " + Long
+                                    .toBinaryString(status));
+            }
+        }
+    }
+    private void dispatchRemovals(PostponedUpdates postponedUpdates,
+            ListUpdateCallback updateCallback, int start, int count, int globalIndex) {
+        if (!mDetectMoves) {
+            updateCallback.onRemoved(start, count);
+            return;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            final int status = mOldItemStatuses[globalIndex + i] & FLAG_MASK;
+            switch (status) {
+                case 0: // real removal
+                    updateCallback.onRemoved(start + i, 1);
+                    postponedUpdates.offsetAll(-1);
+                    break;
+                case FLAG_MOVED_CHANGED:
+                case FLAG_MOVED_NOT_CHANGED:
+                    final int pos = mOldItemStatuses[globalIndex + i] >> FLAG_OFFSET;
+                    final int currentPos = postponedUpdates.remove(pos, false);
+                    // the item was moved to that position. we do -1 because this is a move not
+                    // add and removing current item offsets the target move by 1
+                    //noinspection ConstantConditions
+                    updateCallback.onMoved(start + i, currentPos - 1);
+                    if (status == FLAG_MOVED_CHANGED) {
+                        // also dispatch a change
+                        updateCallback.onChanged(currentPos - 1, 1,
+                                mCallback.getChangePayload(globalIndex + i, pos));
+                    }
+                    break;
+                case FLAG_IGNORE: // ignoring this
+                    postponedUpdates.add(globalIndex + i, start + i, true);
+                    break;
+                default:
+                    throw new IllegalStateException(
+                            "unknown flag for pos " + (globalIndex + i) + " " + Long
+                                    .toBinaryString(status));
+            }
+        }
+    }
+    /**
+     * Returns a cursor which yields the updates of {@link #dispatchUpdatesTo(ListUpdateCallback)}
+     * one at a time, for consumers which want to pull them at their own pace, e.g. between
+     * frames or network writes.
+     * <p>
+     * The updates are computed as the cursor advances, from the snakes and the statuses of
+     * this result; no list of operations is built. They are the same, in the same order and
+     * batched the same way, as the ones dispatched to a callback.
+     * <p>
+     * Each cursor keeps its own position, a result can be traversed by several cursors. A
+     * result owned by a {@link DiffWorkspace} must not be re-calculated while a cursor is in
+     * use.
+     *
+     * @return A cursor positioned before the first update.
+     */
+    public UpdateCursor newUpdateCursor() {
+        return new UpdateCursor();
     }
-    private static PostponedUpdate removePostponedUpdate(List<PostponedUpdate> updates,
-            int pos, boolean removal) {
-        for (int i = updates.size() - 1; i >= 0; i--) {
-            final PostponedUpdate update = updates.get(i);
-            if (update.posInOwnerList == pos && update.removal == removal) {
-                updates.remove(i);
-                for (int j = i; j < updates.size(); j++) {
-                    // offset other ops since they swapped positions
-                    updates.get(j).currentPos += removal ? 1 : -1;
+    /**
+     * A pull based view of the updates of a {@link DiffResult}, see
+     * {@link DiffResult#newUpdateCursor()}.
+     * <pre>
+     *     DiffResult.UpdateCursor cursor = result.newUpdateCursor();
+     *     while (cursor.next()) {
+     *         cursor.dispatchTo(updateCallback);
+     *     }
+     * </pre>
+     * 拉取式：每次next()只推进到产生下一条update为止
+     */
+    public final class UpdateCursor {
+        public static final int TYPE_INSERT = 1;
+        public static final int TYPE_REMOVE = 2;
+        public static final int TYPE_MOVE = 3;
+        public static final int TYPE_CHANGE = 4;
+        // where the traversal of the current snake is
+        private static final int PHASE_NEXT_SNAKE = 0;
+        private static final int PHASE_REMOVALS = 1;
+        private static final int PHASE_ADDITIONS = 2;
+        private static final int PHASE_CHANGES = 3;
+        private static final int PHASE_DONE = 4;
+        // a single step emits at most two updates (a batched one and a move), keep a few slots
+        private static final int QUEUE_SIZE = 4;
+        private final PostponedUpdates mPostponedUpdates;
+        private final BatchingListUpdateCallback mBatchingCallback;
+        // updates which came out of the batching callback but were not pulled yet
+        private final int[] mQueuedTypes = new int[QUEUE_SIZE];
+        private final int[] mQueuedFirsts = new int[QUEUE_SIZE];
+        private final int[] mQueuedSeconds = new int[QUEUE_SIZE];
+        private final Object[] mQueuedPayloads = new Object[QUEUE_SIZE];
+        private int mQueueHead;
+        private int mQueueSize;
+        // traversal state, same variables as dispatchUpdatesTo
+        private int mPhase = PHASE_NEXT_SNAKE;
+        private int mSnakeIndex = mSnakes.count();
+        private int mPosOld = mOldListSize;
+        private int mPosNew = mNewListSize;
+        private int mSnakeX;
+        private int mSnakeY;
+        private int mSnakeSize;
+        // the item of the current phase, counting down
+        private int mItem;
+        // the current update
+        private int mType;
+        private int mFirst;
+        private int mSecond;
+        private Object mPayload;
+        UpdateCursor() {
+            mPostponedUpdates = mDetectMoves
+                    ? new PostponedUpdates(mOldListSize, mNewListSize) : null;
+            mBatchingCallback = new BatchingListUpdateCallback(new ListUpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    enqueue(TYPE_INSERT, position, count, null);
+                }
+                @Override
+                public void onRemoved(int position, int count) {
+                    enqueue(TYPE_REMOVE, position, count, null);
+                }
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    enqueue(TYPE_MOVE, fromPosition, toPosition, null);
+                }
+                @Override
+                public void onChanged(int position, int count, Object payload) {
+                    enqueue(TYPE_CHANGE, position, count, payload);
+                }
+            });
+        }
+        /**
+         * Moves to the next update.
+         *
+         * @return True if there is one, false if all updates were returned.
+         */
+        public boolean next() {
+            while (mQueueSize == 0) {
+                if (mPhase == PHASE_DONE) {
+                    mType = 0;
+                    mPayload = null;
+                    return false;
                 }
-                return update;
+                step();
+            }
+            mType = mQueuedTypes[mQueueHead];
+            mFirst = mQueuedFirsts[mQueueHead];
+            mSecond = mQueuedSeconds[mQueueHead];
+            mPayload = mQueuedPayloads[mQueueHead];
+            mQueuedPayloads[mQueueHead] = null;
+            mQueueHead = (mQueueHead + 1) % QUEUE_SIZE;
+            mQueueSize--;
+            return true;
+        }
+        /**
+         * @return One of {@link #TYPE_INSERT}, {@link #TYPE_REMOVE}, {@link #TYPE_MOVE} or
+         * {@link #TYPE_CHANGE}.
+         */
+        public int getType() {
+            return mType;
+        }
+        /**
+         * @return The position of an insertion, removal or change, the from position of a
+         * move.
+         */
+        public int getPosition() {
+            return mFirst;
+        }
+        /**
+         * @return The number of inserted, removed or changed items, 1 for a move.
+         */
+        public int getCount() {
+            return mType == TYPE_MOVE ? 1 : mSecond;
+        }
+        /**
+         * @return The to position of a move.
+         */
+        public int getToPosition() {
+            return mType == TYPE_MOVE ? mSecond : mFirst;
+        }
+        /**
+         * @return The payload of a change, null for the other updates.
+         */
+        @Nullable
+        public Object getPayload() {
+            return mPayload;
+        }
+        /**
+         * Dispatches the current update to the given callback.
+         */
+        public void dispatchTo(ListUpdateCallback updateCallback) {
+            switch (mType) {
+                case TYPE_INSERT:
+                    updateCallback.onInserted(mFirst, mSecond);
+                    break;
+                case TYPE_REMOVE:
+                    updateCallback.onRemoved(mFirst, mSecond);
+                    break;
+                case TYPE_MOVE:
+                    updateCallback.onMoved(mFirst, mSecond);
+                    break;
+                case TYPE_CHANGE:
+                    updateCallback.onChanged(mFirst, mSecond, mPayload);
+                    break;
+                default:
+                    throw new IllegalStateException("no current update, call next() first");
+            }
+        }
+        private void enqueue(int type, int first, int second, Object payload) {
+            final int slot = (mQueueHead + mQueueSize) % QUEUE_SIZE;
+            mQueuedTypes[slot] = type;
+            mQueuedFirsts[slot] = first;
+            mQueuedSeconds[slot] = second;
+            mQueuedPayloads[slot] = payload;
+            mQueueSize++;
+        }
+        /**
+         * Feeds one item (or one whole block when moves are not detected) to the batching
+         * callback, in the order of dispatchUpdatesTo.
+         */
+        private void step() {
+            final int endX = mSnakeX + mSnakeSize;
+            final int endY = mSnakeY + mSnakeSize;
+            switch (mPhase) {
+                case PHASE_NEXT_SNAKE:
+                    if (mSnakeIndex == 0) {
+                        mBatchingCallback.dispatchLastEvent();
+                        mPhase = PHASE_DONE;
+                        return;
+                    }
+                    mSnakeIndex--;
+                    mSnakeX = mSnakes.getX(mSnakeIndex);
+                    mSnakeY = mSnakes.getY(mSnakeIndex);
+                    mSnakeSize = mSnakes.getSize(mSnakeIndex);
+                    mItem = mPosOld - (mSnakeX + mSnakeSize) - 1;
+                    mPhase = PHASE_REMOVALS;
+                    return;
+                case PHASE_REMOVALS:
+                    if (mItem < 0) {
+                        mItem = mPosNew - endY - 1;
+                        mPhase = PHASE_ADDITIONS;
+                    } else if (!mDetectMoves) {
+                        dispatchRemovals(null, mBatchingCallback, endX, mItem + 1, endX);
+                        mItem = -1;
+                    } else {
+                        dispatchRemovals(mPostponedUpdates, mBatchingCallback, endX + mItem, 1,
+                                endX + mItem);
+                        mItem--;
+                    }
+                    return;
+                case PHASE_ADDITIONS:
+                    if (mItem < 0) {
+                        mItem = mSnakeSize - 1;
+                        mPhase = PHASE_CHANGES;
+                    } else if (!mDetectMoves) {
+                        dispatchAdditions(null, mBatchingCallback, endX, mItem + 1, endY);
+                        mItem = -1;
+                    } else {
+                        dispatchAdditions(mPostponedUpdates, mBatchingCallback, endX, 1,
+                                endY + mItem);
+                        mItem--;
+                    }
+                    return;
+                case PHASE_CHANGES:
+                    // skip the unchanged items, there can be many of them
+                    while (mItem >= 0
+                            && (mOldItemStatuses[mSnakeX + mItem] & FLAG_MASK) != FLAG_CHANGED) {
+                        mItem--;
+                    }
+                    if (mItem < 0) {
+                        mPosOld = mSnakeX;
+                        mPosNew = mSnakeY;
+                        mPhase = PHASE_NEXT_SNAKE;
+                    } else {
+                        mBatchingCallback.onChanged(mSnakeX + mItem, 1,
+                                mCallback.getChangePayload(mSnakeX + mItem, mSnakeY + mItem));
+                        mItem--;
+                    }
+                    return;
+                default:
+                    throw new IllegalStateException("unknown cursor phase " + mPhase);
             }
         }
-        return null;
+    }
+    Callback getCallback() {
+        return mCallback;
+    }
+    SnakeList getSnakeList() {
+        return mSnakes;
+    }
+    int getOldListSize() {
+        return mOldListSize;
+    }
+    int getNewListSize() {
+        return mNewListSize;
+    }
+    /**
+     * Finds the old item which was matched to the given new item, on a diagonal or as a move.
+     *
+     * @param newItemPosition The position of the item in the new list
+     * @return The position of the item in the old list, or {@link #NO_POSITION} if the new
+     * item is an addition.
+     */
+    int findOldItem(int newItemPosition) {
+        final int status = mNewItemStatuses[newItemPosition];
+        if ((status & FLAG_MASK) == 0) {
+            return NO_POSITION;
+        }
+        return status >> FLAG_OFFSET;
+    }
+    /**
+     * Same as {@link #findOldItem(int)} in the other direction.
+     */
+    int findNewItem(int oldItemPosition) {
+        final int status = mOldItemStatuses[oldItemPosition];
+        if ((status & FLAG_MASK) == 0) {
+            return NO_POSITION;
+        }
+        return status >> FLAG_OFFSET;
+    }
+    /**
+     * Given a position in the old list, returns the position in the new list, or
+     * {@link #NO_POSITION} if it was removed.
+     * <p>
+     * The statuses computed by the diff already hold the mapping, so this is a lookup, O(1).
+     *
+     * @param oldListPosition Position of item in old list
+     * @return Position of item in new list, or {@link #NO_POSITION} if not present.
+     * @throws IndexOutOfBoundsException If the position is not in the old list.
+     * @see #convertOldPositionsToNew(int[], int, int[], int, int)
+     */
+    public int convertOldPositionToNew(int oldListPosition) {
+        if (oldListPosition < 0 || oldListPosition >= mOldListSize) {
+            throw new IndexOutOfBoundsException("Index out of bounds - passed position = "
+                    + oldListPosition + ", old list size = " + mOldListSize);
+        }
+        return findNewItem(oldListPosition);
+    }
+    /**
+     * Given a position in the new list, returns the position in the old list, or
+     * {@link #NO_POSITION} if it was added.
+     *
+     * @param newListPosition Position of item in new list
+     * @return Position of item in old list, or {@link #NO_POSITION} if not present.
+     * @throws IndexOutOfBoundsException If the position is not in the new list.
+     * @see #convertNewPositionsToOld(int[], int, int[], int, int)
+     */
+    public int convertNewPositionToOld(int newListPosition) {
+        if (newListPosition < 0 || newListPosition >= mNewListSize) {
+            throw new IndexOutOfBoundsException("Index out of bounds - passed position = "
+                    + newListPosition + ", new list size = " + mNewListSize);
+        }
+        return findOldItem(newListPosition);
+    }
+    /**
+     * Converts a batch of old list positions, e.g. a selection, to new list positions.
+     * <p>
+     * Nothing is allocated; {@code src} and {@code dst} may be the same array to convert in
+     * place.
+     *
+     * @param src The old list positions
+     * @param srcOffset The index of the first position in {@code src}
+     * @param dst Receives the new list positions, {@link #NO_POSITION} for removed items
+     * @param dstOffset The index of the first result in {@code dst}
+     * @param count The number of positions to convert
+     * @throws IndexOutOfBoundsException If a position is not in the old list.
+     */
+    public void convertOldPositionsToNew(int[] src, int srcOffset, int[] dst, int dstOffset,
+            int count) {
+        checkRange(src, srcOffset, dst, dstOffset, count);
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = convertOldPositionToNew(src[srcOffset + i]);
+        }
+    }
+    /**
+     * Converts a batch of new list positions to old list positions.
+     * <p>
+     * Nothing is allocated; {@code src} and {@code dst} may be the same array to convert in
+     * place.
+     *
+     * @param src The new list positions
+     * @param srcOffset The index of the first position in {@code src}
+     * @param dst Receives the old list positions, {@link #NO_POSITION} for added items
+     * @param dstOffset The index of the first result in {@code dst}
+     * @param count The number of positions to convert
+     * @throws IndexOutOfBoundsException If a position is not in the new list.
+     */
+    public void convertNewPositionsToOld(int[] src, int srcOffset, int[] dst, int dstOffset,
+            int count) {
+        checkRange(src, srcOffset, dst, dstOffset, count);
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = convertNewPositionToOld(src[srcOffset + i]);
+        }
+    }
+    private static void checkRange(int[] src, int srcOffset, int[] dst, int dstOffset,
+            int count) {
+        if (count < 0 || srcOffset < 0 || dstOffset < 0 || srcOffset > src.length - count
+                || dstOffset > dst.length - count) {
+            throw new IndexOutOfBoundsException("count " + count + " at " + srcOffset + " / "
+                    + dstOffset + " does not fit arrays of " + src.length + " / " + dst.length);
+        }
+    }
+    /**
+     * @param newItemPosition A new item for which {@link #findOldItem(int)} is not
+     *                        {@link #NO_POSITION}
+     * @return True if the contents of the item changed.
+     */
+    boolean isItemChanged(int newItemPosition) {
+        int flag = mNewItemStatuses[newItemPosition] & FLAG_MASK;
+        if (flag == FLAG_IGNORE) {
+            // the move was recorded on the old item, so is whether it changed
+            flag = mOldItemStatuses[mNewItemStatuses[newItemPosition] >> FLAG_OFFSET]
+                    & FLAG_MASK;
+        }
+        return flag == FLAG_CHANGED || flag == FLAG_MOVED_CHANGED;
+    }
+    /**
+     * Finds the old item which can stand for the given new item, the same item with the same
+     * contents. Used by {@link ListPatcher} to keep the old instances of unchanged items.
+     *
+     * @param newItemPosition The position of the item in the new list
+     * @return The position of the item in the old list, or {@link #NO_POSITION} if the new
+     * item is an addition or its contents changed.
+     */
+    int findUnchangedOldItem(int newItemPosition) {
+        final int oldItemPosition = findOldItem(newItemPosition);
+        return oldItemPosition == NO_POSITION || isItemChanged(newItemPosition)
+                ? NO_POSITION : oldItemPosition;
+    }
+    /**
+     * Composes two consecutive diffs, A to B and B to C, into a single diff from A to C, for
+     * consumers which fell behind and want to catch up with one stream of updates.
+     * <p>
+     * An item of C is matched to an item of A when both diffs matched it. It changed if either
+     * diff says so, in which case its payload is null. Moves are detected if both diffs
+     * detected them.
+     * <p>
+     * Only the status arrays of the two results are read, no item is compared again. The
+     * composed result doesn't reference the two results, so they can be recycled by their
+     * {@link DiffWorkspace} right after.
+     *
+     * @param first The diff from A to B
+     * @param second The diff from B to C
+     * @return A diff from A to C.
+     */
+    public static DiffResult compose(DiffResult first, DiffResult second) {
+        return compose(first, second, null);
+    }
+    /**
+     * Same as {@link #compose(DiffResult, DiffResult)}, merging the payloads of an item which
+     * changed in both diffs with the given combiner. Payloads are computed when the composed
+     * result is dispatched, through the callbacks of the two diffs, which must still be able
+     * to answer then.
+     *
+     * @param first The diff from A to B
+     * @param second The diff from B to C
+     * @param payloadCombiner Merges the payload of the first diff with the one of the second,
+     *                        null to dispatch changes without payload. An item changed by
+     *                        only one of the diffs keeps that diff's payload.
+     * @return A diff from A to C.
+     */
+    public static DiffResult compose(DiffResult first, DiffResult second,
+            @Nullable PayloadCombiner payloadCombiner) {
+        if (first.mNewListSize != second.mOldListSize) {
+            throw new IllegalArgumentException("the first diff ends with " + first.mNewListSize
+                    + " items but the second one starts with " + second.mOldListSize);
+        }
+        final ComposedCallback callback = new ComposedCallback(first, second, payloadCombiner);
+        // A's items are keyed by their position, so keys are unique and the LIS search finds
+        // the longest run of matched items that keep their order, in O(N log N)
+        final DiffConfig config = new DiffConfig.Builder()
+                .setDetectMoves(first.mDetectMoves && second.mDetectMoves)
+                .setStrategy(DiffStrategy.UNIQUE_KEYS)
+                .build();
+        return calculateDiff(callback, config);
+    }
+    /**
+     * Returns whether the diff ran out of its budget (see
+     * {@link DiffConfig.Builder#setMaxEditDistance(int)} and
+     * {@link DiffConfig.Builder#setTimeBudget(long, TimeUnit)}).
+     * <p>
+     * An approximated result is still a valid edit script from the old list to the new one,
+     * it may just dispatch more removals and insertions than necessary.
+     * <p>
+     * Moves are not detected in an approximated result of a plain {@link Callback}: the
+     * given up ranges are all removals and insertions, and pairing them through
+     * areItemsTheSame is quadratic, which would undo the budget. A {@link KeyedCallback}
+     * pairs them through its keys in linear time, so its moves are still detected.
+     *
+     * @return True if the result is not guaranteed to be minimal.
+     */
+    public boolean isApproximate() {
+        return mApproximate;
+    }
+    /**
+     * Returns the counters and phase timings of this diff.
+     *
+     * @return The metrics or null if they were not enabled through
+     * {@link DiffConfig.Builder#setMetricsEnabled(boolean)}.
+     */
+    @Nullable
+    public DiffMetrics getMetrics() {
+        return mMetrics;
     }
     @VisibleForTesting
     List<Snake> getSnakes() {
-        return mSnakes;
+        return mSnakes.toSnakes();
     }
 }
\ No newline at end of file
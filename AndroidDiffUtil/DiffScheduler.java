@@ -0,0 +1,216 @@
+/**
+ * Runs the diffs of one list in the background, at most one at a time, dropping the
+ * snapshots which were replaced before their diff could start (latest wins).
+ * <p>
+ * When a list changes faster than it can be diffed, queueing every intermediate diff wastes
+ * cores and makes the consumer fall further behind. The scheduler keeps only the newest
+ * submitted snapshot and always diffs it against the last snapshot delivered to the consumer,
+ * so every delivered result applies to what the consumer currently shows.
+ * <pre>
+ *     DiffScheduler&lt;List&lt;Item&gt;&gt; scheduler = new DiffScheduler&lt;&gt;(initialList,
+ *             MyCallback::new, (list, result) -&gt; {
+ *                 mAdapter.setData(list);
+ *                 result.dispatchUpdatesTo(mAdapter);
+ *             }, DiffConfig.DEFAULT, backgroundExecutor, mainThreadExecutor);
+ *     scheduler.submit(newList);
+ * </pre>
+ * 和AsyncListDiffer类似：同一时间只跑一个diff，中间版本直接丢弃，只保留最新的
+ *
+ * @param <T> The type of the list snapshots
+ */
+public static class DiffScheduler<T> {
+    /**
+     * Creates the Callback which diffs two snapshots, on the background executor.
+     */
+    public interface CallbackFactory<T> {
+        Callback create(T oldSnapshot, T newSnapshot);
+    }
+    /**
+     * Receives the results, on the result executor.
+     */
+    public interface Receiver<T> {
+        /**
+         * If this throws, the snapshot counts as dropped instead of delivered and the next
+         * diff starts from the previously delivered snapshot again.
+         *
+         * @param snapshot The snapshot the result leads to, the consumer's list from now on
+         * @param result The diff from the previously delivered snapshot. It is only valid
+         *               during this call, the scheduler re-uses its memory for the next diff.
+         */
+        void onDiffResult(T snapshot, DiffResult result);
+    }
+    private final CallbackFactory<T> mCallbackFactory;
+    private final Receiver<T> mReceiver;
+    private final DiffConfig mConfig;
+    private final Executor mBackgroundExecutor;
+    private final Executor mResultExecutor;
+    // only one diff runs at a time, so they can all share the scratch memory
+    private final DiffWorkspace mWorkspace = new DiffWorkspace();
+    // guarded by this
+    private T mDeliveredSnapshot;
+    @Nullable
+    private T mPendingSnapshot;
+    private boolean mRunning;
+    private long mSubmittedCount;
+    private long mDroppedCount;
+    private long mDeliveredCount;
+    private final Runnable mDiffRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final T oldSnapshot;
+            final T newSnapshot;
+            synchronized (DiffScheduler.this) {
+                oldSnapshot = mDeliveredSnapshot;
+                newSnapshot = mPendingSnapshot;
+                mPendingSnapshot = null;
+            }
+            Delivery delivery = null;
+            try {
+                delivery = new Delivery(newSnapshot, calculateDiff(
+                        mCallbackFactory.create(oldSnapshot, newSnapshot), mConfig, mWorkspace));
+                mResultExecutor.execute(delivery);
+            } catch (RuntimeException e) {
+                // a receiver which threw on a direct result executor was handled by deliver
+                if (delivery == null || !delivery.mStarted) {
+                    onDiffFailed(e);
+                }
+                throw e;
+            }
+        }
+    };
+    /**
+     * Delivers a result on the result executor.
+     */
+    private final class Delivery implements Runnable {
+        private final T mSnapshot;
+        private final DiffResult mResult;
+        volatile boolean mStarted;
+        Delivery(T snapshot, DiffResult result) {
+            mSnapshot = snapshot;
+            mResult = result;
+        }
+        @Override
+        public void run() {
+            mStarted = true;
+            deliver(mSnapshot, mResult);
+        }
+    }
+    /**
+     * @param initialSnapshot The snapshot the consumer shows now
+     * @param callbackFactory Creates the Callback of each diff
+     * @param receiver Receives the results
+     * @param config How to calculate the diffs
+     * @param backgroundExecutor Runs the diffs
+     * @param resultExecutor Delivers the results, e.g. the main thread
+     */
+    public DiffScheduler(T initialSnapshot, CallbackFactory<T> callbackFactory,
+            Receiver<T> receiver, DiffConfig config, Executor backgroundExecutor,
+            Executor resultExecutor) {
+        mDeliveredSnapshot = initialSnapshot;
+        mCallbackFactory = callbackFactory;
+        mReceiver = receiver;
+        mConfig = config;
+        mBackgroundExecutor = backgroundExecutor;
+        mResultExecutor = resultExecutor;
+    }
+    /**
+     * Schedules a diff to the given snapshot. If a snapshot submitted earlier is still waiting
+     * for its diff, it is dropped. The snapshot must not be modified afterwards.
+     *
+     * @param snapshot The new contents of the list
+     */
+    public void submit(T snapshot) {
+        synchronized (this) {
+            mSubmittedCount++;
+            if (mPendingSnapshot != null) {
+                mDroppedCount++;
+            }
+            mPendingSnapshot = snapshot;
+            if (mRunning) {
+                // picked up when the running diff is delivered
+                return;
+            }
+            mRunning = true;
+        }
+        startDiff();
+    }
+    /**
+     * @return The number of snapshots submitted but not delivered yet, 0 to 2: the one being
+     * diffed and the one waiting for it.
+     */
+    public synchronized int getQueueDepth() {
+        return (mRunning ? 1 : 0) + (mPendingSnapshot != null ? 1 : 0);
+    }
+    /**
+     * @return The number of snapshots dropped because a newer one replaced them, or because
+     * their diff or the receiver threw.
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+    /**
+     * @return The number of submitted snapshots.
+     */
+    public synchronized long getSubmittedCount() {
+        return mSubmittedCount;
+    }
+    /**
+     * @return The number of results delivered to the receiver.
+     */
+    public synchronized long getDeliveredCount() {
+        return mDeliveredCount;
+    }
+    private void deliver(T snapshot, DiffResult result) {
+        boolean delivered = false;
+        try {
+            mReceiver.onDiffResult(snapshot, result);
+            delivered = true;
+        } finally {
+            final boolean next;
+            synchronized (this) {
+                // a receiver which threw may not show the snapshot, keep diffing from the old one
+                if (delivered) {
+                    mDeliveredSnapshot = snapshot;
+                    mDeliveredCount++;
+                } else {
+                    mDroppedCount++;
+                }
+                next = mPendingSnapshot != null;
+                mRunning = next;
+            }
+            if (next) {
+                // the workspace is free again, the result above is not used any more
+                startDiff();
+            }
+        }
+    }
+    /**
+     * The snapshot of a diff which threw is lost, one submitted meanwhile still gets its diff.
+     */
+    private void onDiffFailed(RuntimeException e) {
+        final boolean next;
+        synchronized (this) {
+            mDroppedCount++;
+            next = mPendingSnapshot != null;
+            mRunning = next;
+        }
+        if (next) {
+            try {
+                startDiff();
+            } catch (RuntimeException rejected) {
+                e.addSuppressed(rejected);
+            }
+        }
+    }
+    private void startDiff() {
+        try {
+            mBackgroundExecutor.execute(mDiffRunnable);
+        } catch (RuntimeException e) {
+            // e.g. a RejectedExecutionException, the pending snapshot waits for the next submit
+            synchronized (this) {
+                mRunning = false;
+            }
+            throw e;
+        }
+    }
+}
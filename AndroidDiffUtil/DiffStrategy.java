@@ -0,0 +1,403 @@
+/**
+ * Decides how the matching diagonals between the trimmed old and new windows are found.
+ * <p>
+ * Every strategy produces the same structure, a list of snakes whose diagonals are the matched
+ * items, so DiffResult, move detection and dispatching work the same whichever one is picked.
+ * Only Myers' strategy guarantees a minimal edit script for every input; the others trade it
+ * for speed on inputs they are good at, see each constant.
+ * <p>
+ * Patience and histogram need item keys to find unique / rare items, so they fall back to
+ * Myers' for callbacks which are not a {@link KeyedCallback}. Like Myers', they check the
+ * budget of {@link DiffConfig.Builder#setMaxEditDistance(int)} and
+ * {@link DiffConfig.Builder#setTimeBudget(long, TimeUnit)} once per range and give the range up
+ * when it runs out. Their d is not known before the range is searched, so they check the
+ * difference of its sizes instead; the ranges they solve with Myers' are checked on the real d.
+ * <p>
+ * Other strategies can be plugged in by extending this class, see
+ * {@link #findSnakes(Callback, long[], long[], int, int, int, int, Output)}.
+ * 和git一样：myers默认，patience和histogram在大量重复项的输入上更快、结果也更可读
+ */
+public abstract static class DiffStrategy {
+    /**
+     * Myers' O((N+M)D) search. Works with any Callback and honours
+     * {@link DiffConfig.Builder#setParallelism(ForkJoinPool, int)}.
+     */
+    public static final DiffStrategy MYERS = new Myers();
+    /**
+     * Longest increasing subsequence of the old positions of the new items, in O(N log N)
+     * whatever the edit distance. Same edit distance as Myers' when old keys are unique, falls
+     * back to Myers' when they are not.
+     */
+    public static final DiffStrategy UNIQUE_KEYS = new UniqueKeys();
+    /**
+     * Patience diff: anchors the diff on items which appear exactly once in both lists and
+     * recurses between the anchors. Ranges without such items are solved with Myers'.
+     */
+    public static final DiffStrategy PATIENCE = new Patience();
+    /**
+     * Histogram diff: anchors the diff on the longest common region around the rarest items
+     * and recurses on both sides. Ranges whose rarest common item occurs more than 64 times
+     * are solved with Myers'.
+     */
+    public static final DiffStrategy HISTOGRAM = new Histogram();
+    protected DiffStrategy() {
+    }
+    /**
+     * Finds the matching diagonals of the given window and adds them to {@code out}. With a
+     * {@link KeyedCallback} the common head and tail of the lists are already matched, as far
+     * as their keys are unique, and are not part of the window.
+     * <p>
+     * Every item on a diagonal must be the same item as its counterpart according to the
+     * callback, and the diagonals must not cross each other, otherwise the dispatched updates
+     * are wrong. Items left off the diagonals become removals and insertions, or moves.
+     * 可以在任意线程上被调用，实现不能有可变的状态
+     *
+     * @param cb The callback of the diff
+     * @param oldKeys The old keys of a {@link KeyedCallback}, null otherwise
+     * @param newKeys The new keys of a {@link KeyedCallback}, null otherwise
+     * @param oldListStart The first old position of the window
+     * @param oldListEnd The old position after the window
+     * @param newListStart The first new position of the window
+     * @param newListEnd The new position after the window
+     * @param out Receives the diagonals and provides the budget and the Myers' fallback
+     * @return True if the diagonals were added in ascending order, false if they need sorting.
+     */
+    protected abstract boolean findSnakes(Callback cb, @Nullable long[] oldKeys,
+            @Nullable long[] newKeys, int oldListStart, int oldListEnd, int newListStart,
+            int newListEnd, Output out);
+    /**
+     * Collects the diagonals found by a {@link DiffStrategy}. One instance is owned by every
+     * {@link DiffWorkspace} and is only valid during the call to findSnakes.
+     */
+    public static final class Output {
+        DiffConfig mConfig;
+        DiffWorkspace mWorkspace;
+        SnakeList mSnakes;
+        Output() {
+        }
+        void reset(DiffConfig config, DiffWorkspace workspace, SnakeList snakes) {
+            mConfig = config;
+            mWorkspace = workspace;
+            mSnakes = snakes;
+        }
+        /**
+         * Matches {@code size} items starting at the given old and new positions.
+         */
+        public void addDiagonal(int oldPosition, int newPosition, int size) {
+            if (size > 0) {
+                mSnakes.add(oldPosition, newPosition, size, false, false);
+            }
+        }
+        /**
+         * Checks the budget of the diff before working on a range. A strategy gives the range
+         * up, adding no diagonal to it, when this returns false; the result is then reported
+         * as approximate.
+         *
+         * @param editDistance A lower bound of the edit distance of the range, e.g. the
+         *                     difference of its sizes
+         * @return True if the range may be searched
+         * @throws CancellationException if the diff was cancelled
+         */
+        public boolean canSearch(int editDistance) {
+            return mWorkspace.mBudget.canSearch(editDistance);
+        }
+        /**
+         * Solves a range with Myers' on the calling thread, honouring the budget. Its
+         * diagonals are not added in order.
+         */
+        public void solveWithMyers(Callback cb, @Nullable long[] oldKeys,
+                @Nullable long[] newKeys, int oldListStart, int oldListEnd, int newListStart,
+                int newListEnd) {
+            mWorkspace.pushRange(oldListStart, oldListEnd, newListStart, newListEnd);
+            solveRanges(cb, oldKeys, newKeys, oldListEnd - oldListStart,
+                    newListEnd - newListStart, mWorkspace, mSnakes, mWorkspace.mBudget);
+        }
+    }
+    /**
+     * Growable stack of ranges, 4 ints each. Kept separate from the workspace's stack which
+     * solveRanges drains. Empty again whenever a strategy returns.
+     */
+    static class RangeStack {
+        private int[] mValues = new int[16];
+        private int mSize;
+        void push(int oldListStart, int oldListEnd, int newListStart, int newListEnd) {
+            if (oldListStart >= oldListEnd && newListStart >= newListEnd) {
+                return;
+            }
+            if (mSize + 4 > mValues.length) {
+                mValues = Arrays.copyOf(mValues, mValues.length * 2);
+            }
+            mValues[mSize++] = oldListStart;
+            mValues[mSize++] = oldListEnd;
+            mValues[mSize++] = newListStart;
+            mValues[mSize++] = newListEnd;
+        }
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+        void clear() {
+            mSize = 0;
+        }
+        /**
+         * Pops the top range into {@code out}.
+         */
+        void pop(int[] out) {
+            mSize -= 4;
+            System.arraycopy(mValues, mSize, out, 0, 4);
+        }
+    }
+    private static class Myers extends DiffStrategy {
+        @Override
+        protected boolean findSnakes(Callback cb, @Nullable long[] oldKeys,
+                @Nullable long[] newKeys, int oldListStart, int oldListEnd, int newListStart,
+                int newListEnd, Output out) {
+            final DiffConfig config = out.mConfig;
+            final int oldSize = oldListEnd - oldListStart;
+            final int newSize = newListEnd - newListStart;
+            if (config.mForkJoinPool != null && oldSize + newSize > config.mParallelThreshold) {
+                // the task returns the window's snakes sorted, so they can be appended in order
+                out.mSnakes.addAll(config.mForkJoinPool.invoke(new MyersTask(cb, oldKeys,
+                        newKeys, oldListStart, oldListEnd, newListStart, newListEnd,
+                        config.mParallelThreshold, out.mWorkspace.mBudget, out.mWorkspace)));
+                return true;
+            }
+            // instead of a recursive implementation, we keep our own stack to avoid potential
+            // stack overflow exceptions
+            out.solveWithMyers(cb, oldKeys, newKeys, oldListStart, oldListEnd, newListStart,
+                    newListEnd);
+            return false;
+        }
+    }
+    private static class UniqueKeys extends DiffStrategy {
+        @Override
+        protected boolean findSnakes(Callback cb, @Nullable long[] oldKeys,
+                @Nullable long[] newKeys, int oldListStart, int oldListEnd, int newListStart,
+                int newListEnd, Output out) {
+            if (oldKeys != null && diffUniqueKeys(oldKeys, newKeys, oldListStart, oldListEnd,
+                    newListStart, newListEnd, out.mWorkspace, out.mSnakes)) {
+                out.mWorkspace.mBudget.throwIfCanceled();
+                // the LIS snakes come out in order, no sort needed
+                return true;
+            }
+            return MYERS.findSnakes(cb, oldKeys, newKeys, oldListStart, oldListEnd,
+                    newListStart, newListEnd, out);
+        }
+    }
+    /**
+     * Trims the common head and tail of a range, adding them as snakes.
+     *
+     * @param range oldListStart, oldListEnd, newListStart, newListEnd; updated in place
+     */
+    static void trimRange(long[] oldKeys, long[] newKeys, int[] range, Output out) {
+        int prefix = 0;
+        while (range[0] + prefix < range[1] && range[2] + prefix < range[3]
+                && oldKeys[range[0] + prefix] == newKeys[range[2] + prefix]) {
+            prefix++;
+        }
+        if (prefix > 0) {
+            out.addDiagonal(range[0], range[2], prefix);
+            range[0] += prefix;
+            range[2] += prefix;
+        }
+        int suffix = 0;
+        while (range[1] - suffix > range[0] && range[3] - suffix > range[2]
+                && oldKeys[range[1] - suffix - 1] == newKeys[range[3] - suffix - 1]) {
+            suffix++;
+        }
+        if (suffix > 0) {
+            range[1] -= suffix;
+            range[3] -= suffix;
+            out.addDiagonal(range[1], range[3], suffix);
+        }
+    }
+    private static class Patience extends DiffStrategy {
+        // marks a key which occurs more than once in a range
+        private static final int NOT_UNIQUE = -2;
+        @Override
+        protected boolean findSnakes(Callback cb, @Nullable long[] oldKeys,
+                @Nullable long[] newKeys, int oldListStart, int oldListEnd, int newListStart,
+                int newListEnd, Output out) {
+            if (oldKeys == null) {
+                return MYERS.findSnakes(cb, null, null, oldListStart, oldListEnd,
+                        newListStart, newListEnd, out);
+            }
+            final DiffWorkspace workspace = out.mWorkspace;
+            final RangeStack stack = workspace.mStrategyRanges;
+            final int[] range = workspace.mStrategyRange;
+            stack.push(oldListStart, oldListEnd, newListStart, newListEnd);
+            while (!stack.isEmpty()) {
+                stack.pop(range);
+                if (!out.canSearch(Math.abs((range[1] - range[0]) - (range[3] - range[2])))) {
+                    // out of budget, the range becomes removals and insertions
+                    continue;
+                }
+                trimRange(oldKeys, newKeys, range, out);
+                final int oldStart = range[0];
+                final int oldEnd = range[1];
+                final int newStart = range[2];
+                final int newEnd = range[3];
+                if (oldStart == oldEnd || newStart == newEnd) {
+                    continue;
+                }
+                // keys which appear exactly once on each side of the range
+                final LongIntHashMap oldUnique = indexUnique(oldKeys, oldStart, oldEnd,
+                        workspace.mKeyPositions);
+                final LongIntHashMap newUnique = indexUnique(newKeys, newStart, newEnd,
+                        workspace.mNewKeyPositions);
+                final int newSize = newEnd - newStart;
+                // old position of each new item if both are unique, -1 otherwise
+                final int[] anchors = workspace.ensureScratch(0, newSize);
+                boolean hasAnchor = false;
+                for (int j = 0; j < newSize; j++) {
+                    final long key = newKeys[newStart + j];
+                    anchors[j] = newUnique.get(key, -1) == newStart + j
+                            ? oldUnique.get(key, -1) : -1;
+                    hasAnchor |= anchors[j] >= 0;
+                }
+                if (!hasAnchor) {
+                    out.solveWithMyers(cb, oldKeys, newKeys, oldStart, oldEnd, newStart,
+                            newEnd);
+                    continue;
+                }
+                final int[] run = workspace.ensureScratch(1, newSize + 1);
+                final int length = longestIncreasingSubsequence(anchors, newSize, run,
+                        workspace.ensureScratch(2, newSize));
+                // recurse between the anchors, right to left so the stack pops left first
+                int nextOld = oldEnd;
+                int nextNew = newEnd;
+                for (int k = length - 1; k >= 0; k--) {
+                    final int x = anchors[run[k]];
+                    final int y = newStart + run[k];
+                    stack.push(x + 1, nextOld, y + 1, nextNew);
+                    out.addDiagonal(x, y, 1);
+                    nextOld = x;
+                    nextNew = y;
+                }
+                stack.push(oldStart, nextOld, newStart, nextNew);
+            }
+            return false;
+        }
+        /**
+         * @return key -> position for keys which appear once in the range, NOT_UNIQUE for the
+         * others.
+         */
+        private static LongIntHashMap indexUnique(long[] keys, int start, int end,
+                LongIntHashMap positions) {
+            positions.clear();
+            for (int i = start; i < end; i++) {
+                if (positions.put(keys[i], i, -1) != -1) {
+                    positions.put(keys[i], NOT_UNIQUE, -1);
+                }
+            }
+            return positions;
+        }
+    }
+    private static class Histogram extends DiffStrategy {
+        // like git, ranges whose rarest common item is more frequent than this go to Myers'
+        private static final int MAX_CHAIN_LENGTH = 64;
+        @Override
+        protected boolean findSnakes(Callback cb, @Nullable long[] oldKeys,
+                @Nullable long[] newKeys, int oldListStart, int oldListEnd, int newListStart,
+                int newListEnd, Output out) {
+            if (oldKeys == null) {
+                return MYERS.findSnakes(cb, null, null, oldListStart, oldListEnd,
+                        newListStart, newListEnd, out);
+            }
+            final DiffWorkspace workspace = out.mWorkspace;
+            final RangeStack stack = workspace.mStrategyRanges;
+            final int[] range = workspace.mStrategyRange;
+            stack.push(oldListStart, oldListEnd, newListStart, newListEnd);
+            while (!stack.isEmpty()) {
+                stack.pop(range);
+                if (!out.canSearch(Math.abs((range[1] - range[0]) - (range[3] - range[2])))) {
+                    continue;
+                }
+                trimRange(oldKeys, newKeys, range, out);
+                final int oldStart = range[0];
+                final int oldEnd = range[1];
+                final int newStart = range[2];
+                final int newEnd = range[3];
+                if (oldStart == oldEnd || newStart == newEnd) {
+                    continue;
+                }
+                // histogram of the old range: key -> slot, occurrences chained high to low
+                final int oldSize = oldEnd - oldStart;
+                final LongIntHashMap slots = workspace.mKeyPositions;
+                slots.clear();
+                final int[] counts = workspace.ensureScratch(0, oldSize);
+                final int[] heads = workspace.ensureScratch(1, oldSize);
+                final int[] next = workspace.ensureScratch(2, oldSize);
+                for (int x = oldStart; x < oldEnd; x++) {
+                    int slot = slots.get(oldKeys[x], -1);
+                    if (slot == -1) {
+                        slot = slots.size();
+                        slots.put(oldKeys[x], slot, -1);
+                        counts[slot] = 0;
+                        heads[slot] = -1;
+                    }
+                    counts[slot]++;
+                    next[x - oldStart] = heads[slot];
+                    heads[slot] = x;
+                }
+                int bestOld = -1;
+                int bestNew = -1;
+                int bestSize = 0;
+                int bestCount = MAX_CHAIN_LENGTH;
+                boolean tooCommon = false;
+                int y = newStart;
+                while (y < newEnd) {
+                    int nextY = y + 1;
+                    final int slot = slots.get(newKeys[y], -1);
+                    if (slot >= 0 && counts[slot] > MAX_CHAIN_LENGTH) {
+                        tooCommon = true;
+                    } else if (slot >= 0 && counts[slot] <= bestCount) {
+                        for (int x = heads[slot]; x != -1; x = next[x - oldStart]) {
+                            // grow the region around (x, y), tracking its rarest item
+                            int regionCount = counts[slot];
+                            int x0 = x;
+                            int y0 = y;
+                            while (x0 > oldStart && y0 > newStart
+                                    && oldKeys[x0 - 1] == newKeys[y0 - 1]) {
+                                x0--;
+                                y0--;
+                                regionCount = Math.min(regionCount,
+                                        counts[slots.get(oldKeys[x0], -1)]);
+                            }
+                            int x1 = x + 1;
+                            int y1 = y + 1;
+                            while (x1 < oldEnd && y1 < newEnd && oldKeys[x1] == newKeys[y1]) {
+                                regionCount = Math.min(regionCount,
+                                        counts[slots.get(oldKeys[x1], -1)]);
+                                x1++;
+                                y1++;
+                            }
+                            final int size = x1 - x0;
+                            if (regionCount < bestCount
+                                    || regionCount == bestCount && size > bestSize) {
+                                bestOld = x0;
+                                bestNew = y0;
+                                bestSize = size;
+                                bestCount = regionCount;
+                            }
+                            // items inside the region can't start a better one
+                            nextY = Math.max(nextY, y1);
+                        }
+                    }
+                    y = nextY;
+                }
+                if (bestSize == 0) {
+                    if (tooCommon) {
+                        out.solveWithMyers(cb, oldKeys, newKeys, oldStart, oldEnd, newStart,
+                                newEnd);
+                    }
+                    // otherwise nothing is common, all removals and insertions
+                    continue;
+                }
+                out.addDiagonal(bestOld, bestNew, bestSize);
+                stack.push(bestOld + bestSize, oldEnd, bestNew + bestSize, newEnd);
+                stack.push(oldStart, bestOld, newStart, bestNew);
+            }
+            return false;
+        }
+    }
+}
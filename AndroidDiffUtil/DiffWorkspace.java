@@ -0,0 +1,97 @@
+/**
+ * Scratch memory of a diff calculation which can be re-used across calls to
+ * {@link #calculateDiff(Callback, boolean, DiffWorkspace)}.
+ * <p>
+ * A workspace owns the k-line buffers, the range stack, the snakes, the status arrays and the
+ * {@link DiffResult} itself. Buffers only grow, so once a workspace has seen the largest lists
+ * of a hot loop, further diffs don't allocate. The k-lines of a parallel search are owned the
+ * same way, one set per worker running at once, and are dropped with the workspace.
+ * <p>
+ * A workspace is not thread safe; keep one per thread (e.g. in a {@link ThreadLocal}). The
+ * DiffResult returned for a workspace is only valid until the workspace is used again.
+ * 结果对象和数组都是复用的，下一次diff之前要把上一次的结果dispatch掉
+ */
+public static class DiffWorkspace {
+    private static final int[] EMPTY = new int[0];
+    // forward and backward k-lines of Myers' search
+    int[] mForward = EMPTY;
+    int[] mBackward = EMPTY;
+    // ranges waiting to be solved, 4 ints each: oldStart, oldEnd, newStart, newEnd
+    private int[] mRangeStack = EMPTY;
+    private int mRangeCount;
+    // snakes of the current diff and the scratch snake diffPartial writes into
+    final SnakeList mSnakes = new SnakeList();
+    final Snake mSnake = new Snake();
+    int[] mOldItemStatuses = EMPTY;
+    int[] mNewItemStatuses = EMPTY;
+    final MoveIndex mMoveIndex = new MoveIndex();
+    // key -> old position, for the unique key, patience and histogram strategies
+    final LongIntHashMap mKeyPositions = new LongIntHashMap(16);
+    // key -> new position, for the patience strategy
+    final LongIntHashMap mNewKeyPositions = new LongIntHashMap(16);
+    private final int[][] mScratch = {EMPTY, EMPTY, EMPTY};
+    // ranges of the patience and histogram strategies
+    final DiffStrategy.RangeStack mStrategyRanges = new DiffStrategy.RangeStack();
+    final int[] mStrategyRange = new int[4];
+    final DiffStrategy.Output mStrategyOutput = new DiffStrategy.Output();
+    final DiffBudget mBudget = new DiffBudget();
+    final DiffResult mResult = new DiffResult();
+    // workspaces of the MyersTasks, borrowed for the part of a task before it forks
+    final ConcurrentLinkedQueue<DiffWorkspace> mTaskWorkspaces = new ConcurrentLinkedQueue<>();
+    public DiffWorkspace() {
+    }
+    /**
+     * Drops the snakes of the previous diff and prepares the buffers for lists of the given
+     * sizes.
+     */
+    void reset(int oldSize, int newSize) {
+        mSnakes.clear();
+        mRangeCount = 0;
+        // left over if the previous diff was cancelled
+        mStrategyRanges.clear();
+        mOldItemStatuses = grow(mOldItemStatuses, oldSize);
+        mNewItemStatuses = grow(mNewItemStatuses, newSize);
+    }
+    void ensureKLines(int size) {
+        mForward = grow(mForward, size);
+        mBackward = grow(mBackward, size);
+    }
+    /**
+     * @param index Which of the three scratch arrays
+     * @return An int[] of at least the given size, its contents are undefined.
+     */
+    int[] ensureScratch(int index, int size) {
+        mScratch[index] = grow(mScratch[index], size);
+        return mScratch[index];
+    }
+    void pushRange(int oldListStart, int oldListEnd, int newListStart, int newListEnd) {
+        final int top = mRangeCount * 4;
+        if (top + 4 > mRangeStack.length) {
+            mRangeStack = Arrays.copyOf(mRangeStack, Math.max(16, mRangeStack.length * 2));
+        }
+        mRangeStack[top] = oldListStart;
+        mRangeStack[top + 1] = oldListEnd;
+        mRangeStack[top + 2] = newListStart;
+        mRangeStack[top + 3] = newListEnd;
+        mRangeCount++;
+    }
+    boolean hasRanges() {
+        return mRangeCount > 0;
+    }
+    /**
+     * Pops the top range, its values can be read through {@link #rangeValue(int)} until the
+     * next push.
+     */
+    void popRange() {
+        mRangeCount--;
+    }
+    int rangeValue(int index) {
+        return mRangeStack[mRangeCount * 4 + index];
+    }
+    static int[] grow(int[] array, int size) {
+        if (array.length >= size) {
+            return array;
+        }
+        return new int[Math.max(size, array.length + (array.length >> 1))];
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * A compact binary form of the updates dispatched by a {@link DiffResult}, so that a diff can
+ * be calculated once (e.g. on a server) and replayed into any number of
+ * {@link ListUpdateCallback}s.
+ * <pre>
+ *     EditScript.Writer writer = new EditScript.Writer();
+ *     result.dispatchUpdatesTo(writer);
+ *     writer.writeTo(channel);
+ *     // on the receiving side
+ *     ByteBuffer script = EditScript.readFrom(channel);
+ *     EditScript.replay(script, adapterCallback, payloads);
+ * </pre>
+ * <p>
+ * Layout: the magic bytes {@code 'D' 'U'}, a version byte, the varint length of the body and
+ * the body. The body is a sequence of operations, each a tag byte followed by its varint
+ * arguments, and ends with {@link #END}. Varints are unsigned LEB128, so small positions take
+ * a single byte.
+ * <ul>
+ *     <li>{@link #INSERT}, {@link #REMOVE}: position, count</li>
+ *     <li>{@link #MOVE}: from position, to position</li>
+ *     <li>{@link #CHANGE}: position, count, payload reference</li>
+ * </ul>
+ * Payloads are objects, so the script only holds references: 0 for a null payload, i + 1 for
+ * the i-th entry of {@link Writer#getPayloads()}. How the payloads themselves travel is up to
+ * the caller.
+ * 服务端算一次diff，编码后下发，客户端直接回放到ListUpdateCallback
+ */
+public static final class EditScript {
+    static final byte MAGIC_0 = 'D';
+    static final byte MAGIC_1 = 'U';
+    static final byte VERSION = 1;
+    static final byte END = 0;
+    static final byte INSERT = 1;
+    static final byte REMOVE = 2;
+    static final byte MOVE = 3;
+    static final byte CHANGE = 4;
+    // magic, version and at most 5 bytes of varint length
+    private static final int MAX_HEADER_SIZE = 8;
+    // readFrom grows its buffer from this size, a corrupt length can't allocate it all up front
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+    private EditScript() {
+    }
+    /**
+     * A {@link ListUpdateCallback} which encodes the updates it receives.
+     * <p>
+     * Pass it to {@link DiffResult#dispatchUpdatesTo(ListUpdateCallback)}, the updates are
+     * batched the same way as for any other callback. A writer can be re-used after
+     * {@link #clear()}.
+     */
+    public static final class Writer implements ListUpdateCallback {
+        private ByteBuffer mBody;
+        private final List<Object> mPayloads = new ArrayList<>();
+        // the same payload object is referenced once
+        private final IdentityHashMap<Object, Integer> mPayloadRefs = new IdentityHashMap<>();
+        public Writer() {
+            this(64);
+        }
+        /**
+         * @param initialCapacity The initial size of the body in bytes, it grows as needed.
+         */
+        public Writer(int initialCapacity) {
+            mBody = ByteBuffer.allocate(Math.max(initialCapacity, 16));
+        }
+        @Override
+        public void onInserted(int position, int count) {
+            writeOperation(INSERT, position, count);
+        }
+        @Override
+        public void onRemoved(int position, int count) {
+            writeOperation(REMOVE, position, count);
+        }
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            writeOperation(MOVE, fromPosition, toPosition);
+        }
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            writeOperation(CHANGE, position, count);
+            writeVarint(payloadRef(payload));
+        }
+        /**
+         * @return The payloads referenced by the script, in reference order.
+         */
+        public List<Object> getPayloads() {
+            return Collections.unmodifiableList(mPayloads);
+        }
+        /**
+         * @return A new buffer holding the header and the body written so far, ready to be
+         * read.
+         */
+        public ByteBuffer toByteBuffer() {
+            final ByteBuffer body = body();
+            final ByteBuffer out = ByteBuffer.allocate(MAX_HEADER_SIZE + body.remaining());
+            writeHeader(out, body.remaining());
+            out.put(body);
+            out.flip();
+            return out;
+        }
+        /**
+         * Writes the script to the given channel.
+         *
+         * @param channel The channel to write to, it is not closed.
+         */
+        public void writeTo(WritableByteChannel channel) throws IOException {
+            final ByteBuffer body = body();
+            final ByteBuffer header = ByteBuffer.allocate(MAX_HEADER_SIZE);
+            writeHeader(header, body.remaining());
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+        }
+        /**
+         * Drops everything written so far.
+         */
+        public void clear() {
+            mBody.clear();
+            mPayloads.clear();
+            mPayloadRefs.clear();
+        }
+        // a read view of the body, terminated with END
+        private ByteBuffer body() {
+            ensureCapacity(1);
+            final ByteBuffer body = mBody.duplicate();
+            body.put(END);
+            body.flip();
+            return body;
+        }
+        private void writeOperation(byte tag, int first, int second) {
+            ensureCapacity(11);
+            mBody.put(tag);
+            writeVarint(first);
+            writeVarint(second);
+        }
+        private int payloadRef(@Nullable Object payload) {
+            if (payload == null) {
+                return 0;
+            }
+            Integer ref = mPayloadRefs.get(payload);
+            if (ref == null) {
+                mPayloads.add(payload);
+                ref = mPayloads.size();
+                mPayloadRefs.put(payload, ref);
+            }
+            return ref;
+        }
+        private void writeVarint(int value) {
+            ensureCapacity(5);
+            EditScript.writeVarint(mBody, value);
+        }
+        private void ensureCapacity(int bytes) {
+            if (mBody.remaining() < bytes) {
+                final ByteBuffer grown = ByteBuffer.allocate(
+                        Math.max(mBody.capacity() * 2, mBody.position() + bytes));
+                mBody.flip();
+                grown.put(mBody);
+                mBody = grown;
+            }
+        }
+    }
+    /**
+     * Dispatches the updates of an encoded script to the given callback, in the order they
+     * were written.
+     *
+     * @param script A buffer positioned at the start of a script, as returned by
+     *               {@link Writer#toByteBuffer()} or {@link #readFrom(ReadableByteChannel)}.
+     *               It is left positioned after the script.
+     * @param updateCallback The callback to receive the update operations.
+     * @param payloads Resolves the payload references, the {@link Writer#getPayloads()} of
+     *                 the writer or a copy of them. May be null if the changes have no
+     *                 payload.
+     * @throws IllegalArgumentException If the script is malformed.
+     */
+    public static void replay(ByteBuffer script, ListUpdateCallback updateCallback,
+            @Nullable List<?> payloads) {
+        final int bodySize = readHeader(script);
+        final int end = script.position() + bodySize;
+        if (bodySize > script.remaining()) {
+            throw new IllegalArgumentException("truncated edit script, expected " + bodySize
+                    + " bytes and got " + script.remaining());
+        }
+        while (true) {
+            final byte tag = readByte(script, end);
+            switch (tag) {
+                case END:
+                    script.position(end);
+                    return;
+                case INSERT:
+                    updateCallback.onInserted(readVarint(script, end), readVarint(script, end));
+                    break;
+                case REMOVE:
+                    updateCallback.onRemoved(readVarint(script, end), readVarint(script, end));
+                    break;
+                case MOVE:
+                    updateCallback.onMoved(readVarint(script, end), readVarint(script, end));
+                    break;
+                case CHANGE:
+                    final int position = readVarint(script, end);
+                    final int count = readVarint(script, end);
+                    final int ref = readVarint(script, end);
+                    final Object payload;
+                    if (ref == 0) {
+                        payload = null;
+                    } else if (payloads != null && ref <= payloads.size()) {
+                        payload = payloads.get(ref - 1);
+                    } else {
+                        throw new IllegalArgumentException("unknown payload reference " + ref);
+                    }
+                    updateCallback.onChanged(position, count, payload);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown edit script operation " + tag);
+            }
+        }
+    }
+    /**
+     * Reads one script, header and body, from the given channel.
+     *
+     * @param channel The channel to read from, it is not closed.
+     * @return A buffer holding the script, ready for
+     * {@link #replay(ByteBuffer, ListUpdateCallback, List)}.
+     * @throws EOFException If the channel ends before the script does.
+     */
+    public static ByteBuffer readFrom(ReadableByteChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(MAX_HEADER_SIZE);
+        // magic and version, then the length one byte at a time
+        header.limit(3);
+        readFully(channel, header);
+        do {
+            header.limit(header.position() + 1);
+            readFully(channel, header);
+        } while ((header.get(header.position() - 1) & 0x80) != 0
+                && header.position() < MAX_HEADER_SIZE);
+        header.flip();
+        final int bodySize = readHeader(header.duplicate());
+        if (bodySize > Integer.MAX_VALUE - MAX_HEADER_SIZE) {
+            throw new IllegalArgumentException("edit script too large: " + bodySize);
+        }
+        final int size = header.remaining() + bodySize;
+        // the buffer doubles as the body arrives, so it stays within twice what was sent
+        ByteBuffer script = ByteBuffer.allocate(Math.min(size, READ_CHUNK_SIZE));
+        script.put(header);
+        readFully(channel, script);
+        while (script.capacity() < size) {
+            final ByteBuffer grown = ByteBuffer.allocate(
+                    (int) Math.min(size, script.capacity() * 2L));
+            script.flip();
+            grown.put(script);
+            script = grown;
+            readFully(channel, script);
+        }
+        script.flip();
+        return script;
+    }
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("edit script ended early");
+            }
+        }
+    }
+    private static void writeHeader(ByteBuffer out, int bodySize) {
+        out.put(MAGIC_0);
+        out.put(MAGIC_1);
+        out.put(VERSION);
+        writeVarint(out, bodySize);
+    }
+    /**
+     * @return The size of the body, the buffer is positioned at its start.
+     */
+    private static int readHeader(ByteBuffer in) {
+        if (in.remaining() < 4 || in.get() != MAGIC_0 || in.get() != MAGIC_1) {
+            throw new IllegalArgumentException("not an edit script");
+        }
+        final byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported edit script version " + version);
+        }
+        return readVarint(in, in.limit());
+    }
+    static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+    private static byte readByte(ByteBuffer in, int end) {
+        if (in.position() >= end) {
+            throw new IllegalArgumentException("truncated edit script");
+        }
+        return in.get();
+    }
+    static int readVarint(ByteBuffer in, int end) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte b = readByte(in, end);
+            if (shift == 28 && (b & 0xF8) != 0) {
+                // the fifth byte only holds bits 28 to 30, anything else overflows an int
+                break;
+            }
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint in edit script");
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Applies a {@link DiffResult} to a list in one pass, for keeping mirrors of a list (e.g. on a
+ * server) in sync without replaying every update.
+ * <p>
+ * Replaying {@link ListUpdateCallback#onInserted(int, int)},
+ * {@link ListUpdateCallback#onRemoved(int, int)} and {@link ListUpdateCallback#onMoved(int, int)}
+ * on an {@link ArrayList} shifts its tail for each of them. The patcher instead reads the
+ * statuses of the result and builds each position of the new list directly: an item which is
+ * the same and has the same contents keeps its old instance, wherever it moved, every other
+ * position takes the item of the new list.
+ * <pre>
+ *     DiffResult result = DiffUtil.calculateDiff(new MyCallback(mirror, newList));
+ *     ListPatcher.patchInPlace(result, mirror, newList);
+ * </pre>
+ * 直接用status数组一次性重建列表，不逐条回放insert/remove/move
+ */
+public static final class ListPatcher {
+    private ListPatcher() {
+    }
+    /**
+     * Returns a new list which holds the new list's items, re-using the old instances of the
+     * unchanged items.
+     *
+     * @param result The diff from {@code oldList} to {@code newList}
+     * @param oldList The list the diff was calculated from
+     * @param newList The list the diff was calculated to, supplies the added and changed items
+     * @return A new {@link ArrayList}, {@code oldList} is not modified.
+     */
+    public static <T> List<T> patchToCopy(DiffResult result, List<? extends T> oldList,
+            List<? extends T> newList) {
+        checkSizes(result, oldList, newList);
+        final int newSize = result.getNewListSize();
+        final List<T> patched = new ArrayList<>(newSize);
+        // positional reads, copy lists without random access first
+        final List<? extends T> oldItems = oldList instanceof RandomAccess
+                ? oldList : new ArrayList<>(oldList);
+        final List<? extends T> newItems = newList instanceof RandomAccess
+                ? newList : new ArrayList<>(newList);
+        for (int newPos = 0; newPos < newSize; newPos++) {
+            final int oldPos = result.findUnchangedOldItem(newPos);
+            patched.add(oldPos == DiffResult.NO_POSITION
+                    ? newItems.get(newPos) : oldItems.get(oldPos));
+        }
+        return patched;
+    }
+    /**
+     * Turns {@code target}, which holds the old list, into the new list, re-using the old
+     * instances of the unchanged items.
+     * <p>
+     * The old items are copied aside first, then every position is written once through a
+     * {@link ListIterator}, so the cost is linear for any list implementation.
+     *
+     * @param result The diff from the items of {@code target} to {@code newList}
+     * @param target The list the diff was calculated from, modified in place
+     * @param newList The list the diff was calculated to, supplies the added and changed items
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void patchInPlace(DiffResult result, List<T> target,
+            List<? extends T> newList) {
+        checkSizes(result, target, newList);
+        final int oldSize = result.getOldListSize();
+        final int newSize = result.getNewListSize();
+        final Object[] oldItems = target.toArray();
+        final List<? extends T> newItems = newList instanceof RandomAccess
+                ? newList : new ArrayList<>(newList);
+        final ListIterator<T> iterator = target.listIterator();
+        for (int newPos = 0; newPos < newSize; newPos++) {
+            final int oldPos = result.findUnchangedOldItem(newPos);
+            final T item = oldPos == DiffResult.NO_POSITION
+                    ? newItems.get(newPos) : (T) oldItems[oldPos];
+            if (newPos < oldSize) {
+                iterator.next();
+                iterator.set(item);
+            } else {
+                iterator.add(item);
+            }
+        }
+        if (newSize < oldSize) {
+            target.subList(newSize, oldSize).clear();
+        }
+    }
+    private static void checkSizes(DiffResult result, List<?> oldList, List<?> newList) {
+        if (oldList.size() != result.getOldListSize()) {
+            throw new IllegalArgumentException("old list has " + oldList.size()
+                    + " items, the diff was calculated for " + result.getOldListSize());
+        }
+        if (newList.size() != result.getNewListSize()) {
+            throw new IllegalArgumentException("new list has " + newList.size()
+                    + " items, the diff was calculated for " + result.getNewListSize());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Open addressing map from {@code long} keys to {@code int} values.
+ * <p>
+ * Used by the diff engine to index item keys without boxing them into a {@link HashMap}.
+ * 线性探测，容量始终是2的幂，装载因子不超过1/2
+ */
+static class LongIntHashMap {
+    private long[] mKeys;
+    private int[] mValues;
+    // a slot is used if its stamp is the current generation, so that clear() doesn't have to
+    // wipe a table which grew large for an earlier, bigger input
+    private int[] mStamps;
+    private int mGeneration = 1;
+    private int mMask;
+    private int mSize;
+    LongIntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        mStamps = new int[capacity];
+        mMask = capacity - 1;
+        mSize = 0;
+    }
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = 4;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+    /**
+     * Spreads the key bits, item keys are often sequential ids.
+     */
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+    /**
+     * @return The value mapped to the key or {@code missing} if there is no such mapping.
+     */
+    int get(long key, int missing) {
+        int slot = hash(key) & mMask;
+        while (mStamps[slot] == mGeneration) {
+            if (mKeys[slot] == key) {
+                return mValues[slot];
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return missing;
+    }
+    /**
+     * Maps the key to the value.
+     *
+     * @return The previous value of the key or {@code missing} if it was not mapped.
+     */
+    int put(long key, int value, int missing) {
+        int slot = hash(key) & mMask;
+        while (mStamps[slot] == mGeneration) {
+            if (mKeys[slot] == key) {
+                final int previous = mValues[slot];
+                mValues[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        mStamps[slot] = mGeneration;
+        mKeys[slot] = key;
+        mValues[slot] = value;
+        if (++mSize * 2 > mKeys.length) {
+            rehash();
+        }
+        return missing;
+    }
+    private void rehash() {
+        final long[] keys = mKeys;
+        final int[] values = mValues;
+        final int[] stamps = mStamps;
+        final int generation = mGeneration;
+        allocate(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            if (stamps[i] == generation) {
+                put(keys[i], values[i], 0);
+            }
+        }
+    }
+    int size() {
+        return mSize;
+    }
+    /**
+     * Removes all mappings in O(1), the capacity is kept.
+     */
+    void clear() {
+        if (mSize > 0) {
+            mSize = 0;
+            if (++mGeneration == 0) {
+                // wrapped around, old stamps could look current again
+                Arrays.fill(mStamps, 0);
+                mGeneration = 1;
+            }
+        }
+    }
+}
@@ -49,20 +49,88 @@ static class Snake {
 
 
 /**
- * Represents a range in two lists that needs to be solved.
+ * Cancellation flag shared by {@link #calculateDiffAsync(Callback, Executor)} and the thread
+ * running the diff.
  * <p>
- * This internal class is used when running Myers' algorithm without recursion.
+ * Myers' loop polls it once per d-iteration, so a cancelled diff stops after finishing the
+ * current pass over the k-lines.
  */
-static class Range {
-    int oldListStart, oldListEnd;
-    int newListStart, newListEnd;
-    public Range() {
+static class CancellationSignal {
+    private volatile boolean mCanceled;
+    void cancel() {
+        mCanceled = true;
     }
-    public Range(int oldListStart, int oldListEnd, int newListStart, int newListEnd) {
-        this.oldListStart = oldListStart;
-        this.oldListEnd = oldListEnd;
-        this.newListStart = newListStart;
-        this.newListEnd = newListEnd;
+    boolean isCanceled() {
+        return mCanceled;
+    }
+    void throwIfCanceled() {
+        if (mCanceled) {
+            throw new CancellationException("diff calculation was cancelled");
+        }
+    }
+}
+
+
+/**
+ * Limits of one diff calculation, checked by Myers' loop once per d-iteration and by the other
+ * strategies once per range.
+ * <p>
+ * When a range needs more than {@link DiffConfig.Builder#setMaxEditDistance(int)} steps or the
+ * deadline has passed, the range is given up: it gets no snake and is dispatched as a remove
+ * of its old items and an insert of its new items. The result is still a valid edit script,
+ * just not a minimal one, and {@link DiffResult#isApproximate()} reports it.
+ * 超出预算的range直接整段删除+插入，保证结果正确但不是最短
+ */
+static class DiffBudget {
+    @Nullable
+    private CancellationSignal mSignal;
+    private int mMaxEditDistance;
+    // 0 if there is no deadline
+    private long mDeadlineNanos;
+    // written by fork-join workers
+    private volatile boolean mApproximated;
+    @Nullable
+    private DiffMetrics mMetrics;
+    void reset(DiffConfig config, @Nullable CancellationSignal signal,
+            @Nullable DiffMetrics metrics) {
+        mSignal = signal;
+        mMetrics = metrics;
+        mMaxEditDistance = config.mMaxEditDistance;
+        mDeadlineNanos = config.mTimeBudgetNanos > 0
+                ? System.nanoTime() + config.mTimeBudgetNanos : 0;
+        mApproximated = false;
+    }
+    /**
+     * @param d The edit distance the current range is about to search
+     * @return True if the range may keep searching, false if it has to be given up.
+     * @throws CancellationException if the diff was cancelled
+     */
+    boolean canSearch(int d) {
+        if (mSignal != null) {
+            mSignal.throwIfCanceled();
+        }
+        if (d > mMaxEditDistance
+                || mDeadlineNanos != 0 && System.nanoTime() - mDeadlineNanos > 0) {
+            mApproximated = true;
+            return false;
+        }
+        return true;
+    }
+    void throwIfCanceled() {
+        if (mSignal != null) {
+            mSignal.throwIfCanceled();
+        }
+    }
+    /**
+     * Reports a processed range to the metrics, once per range so it stays off the hot loop.
+     */
+    void onRangeSolved(int d) {
+        if (mMetrics != null) {
+            mMetrics.onRangeSolved(d);
+        }
+    }
+    boolean isApproximated() {
+        return mApproximated;
     }
 }
 
@@ -71,19 +139,85 @@ static class Range {
 // DiffResult使用，触发patchUpdate
 
 /**
- * Represents an update that we skipped because it was a move.
+ * Tracks the updates that we skipped because they were moves.
  * <p>
  * When an update is skipped, it is tracked as other updates are dispatched until the matching
  * add/remove operation is found at which point the tracked position is used to dispatch the
  * update.
+ * <p>
+ * Every dispatched insertion / removal shifts all tracked positions, and every consumed update
+ * shifts the ones which were postponed after it. Instead of walking the list for each of them,
+ * the shifts are kept in a global offset plus a Fenwick tree over the order in which the
+ * updates were postponed, so each operation is O(log K) for K postponed updates.
+ * 原实现每次都要遍历列表修改currentPos，K个move是O(K²)
  */
-private static class PostponedUpdate {
-    int posInOwnerList;
-    int currentPos;
-    boolean removal;
-    public PostponedUpdate(int posInOwnerList, int currentPos, boolean removal) {
-        this.posInOwnerList = posInOwnerList;
-        this.currentPos = currentPos;
-        this.removal = removal;
+static class PostponedUpdates {
+    private final int mOldListSize;
+    // position in the owner list -> index of its update + 1, 0 if none. Old list positions
+    // (removals) first, then new list positions (additions).
+    private final int[] mIndex;
+    // position when postponed, minus the offsets which were already applied at that time
+    private final int[] mBasePos;
+    // Fenwick tree of the offsets of consumed updates, 1 based
+    private final int[] mTree;
+    // offset of all dispatched insertions / removals
+    private int mGlobalOffset;
+    private int mCount;
+    PostponedUpdates(int oldListSize, int newListSize) {
+        mOldListSize = oldListSize;
+        final int capacity = oldListSize + newListSize;
+        mIndex = new int[capacity];
+        mBasePos = new int[capacity];
+        mTree = new int[capacity + 1];
+    }
+    /**
+     * @param posInOwnerList Position in the old list for removals, in the new list otherwise
+     * @param currentPos Position of the update in the list being dispatched
+     * @param removal True for a skipped removal, false for a skipped addition
+     */
+    void add(int posInOwnerList, int currentPos, boolean removal) {
+        final int index = mCount++;
+        mBasePos[index] = currentPos - mGlobalOffset - offsetOf(index);
+        mIndex[slot(posInOwnerList, removal)] = index + 1;
+    }
+    /**
+     * Offsets every postponed update, called for each dispatched insertion / removal.
+     */
+    void offsetAll(int delta) {
+        mGlobalOffset += delta;
     }
-}
\ No newline at end of file
+    /**
+     * Removes the postponed update and offsets the ones postponed after it, since they
+     * swapped positions.
+     *
+     * @return The current position of the removed update.
+     */
+    int remove(int posInOwnerList, boolean removal) {
+        final int slot = slot(posInOwnerList, removal);
+        final int index = mIndex[slot] - 1;
+        if (index < 0) {
+            throw new IllegalStateException("no postponed " + (removal ? "removal" : "addition")
+                    + " for pos " + posInOwnerList);
+        }
+        mIndex[slot] = 0;
+        final int currentPos = mBasePos[index] + mGlobalOffset + offsetOf(index);
+        // suffix add on the updates postponed after this one
+        final int delta = removal ? 1 : -1;
+        for (int i = index + 2; i < mTree.length; i += i & -i) {
+            mTree[i] += delta;
+        }
+        return currentPos;
+    }
+    private int slot(int posInOwnerList, boolean removal) {
+        return removal ? posInOwnerList : mOldListSize + posInOwnerList;
+    }
+    // prefix sum of the tree, the offset applied to the update at index
+    private int offsetOf(int index) {
+        int offset = 0;
+        for (int i = index + 1; i > 0; i -= i & -i) {
+            offset += mTree[i];
+        }
+        return offset;
+    }
+}
+
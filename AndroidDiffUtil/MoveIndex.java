@@ -0,0 +1,106 @@
+/**
+ * Key index of the items which are not on a Myers' diagonal, used to pair removals and
+ * additions into moves.
+ * <p>
+ * Items with equal keys are chained from the highest position to the lowest. Move detection
+ * walks the matrix from right bottom to 0,0, so the position bound of every lookup only
+ * decreases and an entry which is above the bound (or already paired) can be dropped from its
+ * chain for good. This keeps the whole pass linear instead of rescanning earlier snakes for
+ * every removal / addition.
+ * 每个key一条链，链头是位置最大的候选项；链头只会向前走，所以总代价O(N)
+ */
+static class MoveIndex {
+    private static final int NO_POSITION = -1;
+    private static final int[] EMPTY = new int[0];
+    // key -> slot in the head arrays
+    private final LongIntHashMap mSlots = new LongIntHashMap(16);
+    // chain heads of removed old items / added new items for each key slot
+    private int[] mOldHeads = new int[16];
+    private int[] mNewHeads = new int[16];
+    // next (lower) position with the same key
+    private int[] mOldNext = EMPTY;
+    private int[] mNewNext = EMPTY;
+    /**
+     * Creates an empty index, call {@link #build(long[], long[], int[], int[], int, int)}
+     * before using it. An index can be re-built any number of times, its buffers only grow.
+     */
+    MoveIndex() {
+    }
+    /**
+     * @param oldKeys Keys of the old list
+     * @param newKeys Keys of the new list
+     * @param oldItemStatuses Old statuses, only items with status 0 are indexed
+     * @param newItemStatuses New statuses, only items with status 0 are indexed
+     */
+    void build(long[] oldKeys, long[] newKeys, int[] oldItemStatuses, int[] newItemStatuses,
+            int oldListSize, int newListSize) {
+        mSlots.clear();
+        mOldNext = DiffWorkspace.grow(mOldNext, oldListSize);
+        mNewNext = DiffWorkspace.grow(mNewNext, newListSize);
+        // ascending insertion leaves the highest position at the head
+        for (int pos = 0; pos < oldListSize; pos++) {
+            if (oldItemStatuses[pos] == 0) {
+                final int slot = slotOf(oldKeys[pos]);
+                mOldNext[pos] = mOldHeads[slot];
+                mOldHeads[slot] = pos;
+            }
+        }
+        for (int pos = 0; pos < newListSize; pos++) {
+            if (newItemStatuses[pos] == 0) {
+                final int slot = slotOf(newKeys[pos]);
+                mNewNext[pos] = mNewHeads[slot];
+                mNewHeads[slot] = pos;
+            }
+        }
+    }
+    private int slotOf(long key) {
+        final int count = mSlots.size();
+        final int slot = mSlots.get(key, count);
+        if (slot == count) {
+            mSlots.put(key, slot, NO_POSITION);
+            if (slot == mOldHeads.length) {
+                mOldHeads = Arrays.copyOf(mOldHeads, slot * 2);
+                mNewHeads = Arrays.copyOf(mNewHeads, slot * 2);
+            }
+            mOldHeads[slot] = NO_POSITION;
+            mNewHeads[slot] = NO_POSITION;
+        }
+        return slot;
+    }
+    /**
+     * Finds the highest position below {@code bound} in the new list which is an unpaired
+     * addition with the given key.
+     *
+     * @return The position or -1 if there is none.
+     */
+    int findAddition(long key, int bound, int[] newItemStatuses) {
+        final int slot = mSlots.get(key, NO_POSITION);
+        if (slot == NO_POSITION) {
+            return NO_POSITION;
+        }
+        int head = mNewHeads[slot];
+        while (head != NO_POSITION && (head >= bound || newItemStatuses[head] != 0)) {
+            head = mNewNext[head];
+        }
+        mNewHeads[slot] = head;
+        return head;
+    }
+    /**
+     * Finds the highest position below {@code bound} in the old list which is an unpaired
+     * removal with the given key.
+     *
+     * @return The position or -1 if there is none.
+     */
+    int findRemoval(long key, int bound, int[] oldItemStatuses) {
+        final int slot = mSlots.get(key, NO_POSITION);
+        if (slot == NO_POSITION) {
+            return NO_POSITION;
+        }
+        int head = mOldHeads[slot];
+        while (head != NO_POSITION && (head >= bound || oldItemStatuses[head] != 0)) {
+            head = mOldNext[head];
+        }
+        mOldHeads[slot] = head;
+        return head;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Solves one range of Myers' divide and conquer on a {@link ForkJoinPool}.
+ * <p>
+ * The ranges on the left and right of a middle snake never overlap, so they are forked as
+ * separate tasks while they are larger than the threshold. A task returns its snakes sorted:
+ * everything on the left of the middle snake starts before it and everything on the right
+ * starts after it, so left + middle + right needs no further sorting.
+ * <p>
+ * The k-lines of a task come from a {@link DiffWorkspace} borrowed from the one of the calling
+ * diff. A task gives it back before it forks, so there is at most one per worker running at
+ * once, and they go away with the caller's workspace instead of staying with the pool threads.
+ * diffPartial only reads the part of the k-lines that belongs to its range, which is why the
+ * snakes are the same as in the sequential run.
+ */
+// never serialized, the callback and the budget aren't serializable anyway
+@SuppressWarnings("serial")
+static class MyersTask extends RecursiveTask<SnakeList> {
+    private final Callback mCallback;
+    private final long[] mOldKeys;
+    private final long[] mNewKeys;
+    private final int mOldListStart, mOldListEnd;
+    private final int mNewListStart, mNewListEnd;
+    private final int mThreshold;
+    private final DiffBudget mBudget;
+    private final DiffWorkspace mOwner;
+    MyersTask(Callback callback, @Nullable long[] oldKeys, @Nullable long[] newKeys,
+            int oldListStart, int oldListEnd, int newListStart, int newListEnd, int threshold,
+            DiffBudget budget, DiffWorkspace owner) {
+        mCallback = callback;
+        mOldKeys = oldKeys;
+        mNewKeys = newKeys;
+        mOldListStart = oldListStart;
+        mOldListEnd = oldListEnd;
+        mNewListStart = newListStart;
+        mNewListEnd = newListEnd;
+        mThreshold = threshold;
+        mBudget = budget;
+        mOwner = owner;
+    }
+    @Override
+    protected SnakeList compute() {
+        final int oldSize = mOldListEnd - mOldListStart;
+        final int newSize = mNewListEnd - mNewListStart;
+        DiffWorkspace workspace = mOwner.mTaskWorkspaces.poll();
+        if (workspace == null) {
+            workspace = new DiffWorkspace();
+        }
+        final int snakeX;
+        final int snakeY;
+        final int snakeSize;
+        final boolean removal;
+        final boolean reverse;
+        final MyersTask left;
+        final MyersTask right;
+        try {
+            workspace.reset(0, 0);
+            if (oldSize + newSize <= mThreshold) {
+                // small enough, solve it like the sequential path does
+                final SnakeList snakes = new SnakeList();
+                workspace.pushRange(mOldListStart, mOldListEnd, mNewListStart, mNewListEnd);
+                solveRanges(mCallback, mOldKeys, mNewKeys, oldSize, newSize, workspace,
+                        snakes, mBudget);
+                snakes.sort();
+                return snakes;
+            }
+            final int max = oldSize + newSize + Math.abs(oldSize - newSize);
+            workspace.ensureKLines(max * 2);
+            final Snake snake = workspace.mSnake;
+            if (!diffPartial(mCallback, mOldKeys, mNewKeys, mOldListStart, mOldListEnd,
+                    mNewListStart, mNewListEnd, workspace.mForward, workspace.mBackward, max,
+                    snake, mBudget)) {
+                return new SnakeList(2);
+            }
+            pushSubRanges(workspace, snake, mOldListStart, mOldListEnd, mNewListStart,
+                    mNewListEnd);
+            // copy everything out of the workspace before forking
+            snakeX = snake.x;
+            snakeY = snake.y;
+            snakeSize = snake.size;
+            removal = snake.removal;
+            reverse = snake.reverse;
+            workspace.popRange();
+            right = new MyersTask(mCallback, mOldKeys, mNewKeys, workspace.rangeValue(0),
+                    workspace.rangeValue(1), workspace.rangeValue(2), workspace.rangeValue(3),
+                    mThreshold, mBudget, mOwner);
+            workspace.popRange();
+            left = new MyersTask(mCallback, mOldKeys, mNewKeys, workspace.rangeValue(0),
+                    workspace.rangeValue(1), workspace.rangeValue(2), workspace.rangeValue(3),
+                    mThreshold, mBudget, mOwner);
+        } finally {
+            mOwner.mTaskWorkspaces.offer(workspace);
+        }
+        right.fork();
+        final SnakeList snakes = left.compute();
+        if (snakeSize > 0) {
+            snakes.add(snakeX, snakeY, snakeSize, removal, reverse);
+        }
+        snakes.addAll(right.join());
+        return snakes;
+    }
+}
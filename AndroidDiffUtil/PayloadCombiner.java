@@ -0,0 +1,21 @@
+/**
+ * Merges the change payloads of neighbouring changed items, see
+ * {@link DiffResult#dispatchUpdatesTo(ListUpdateCallback, PayloadCombiner)}.
+ * <p>
+ * A {@code null} payload asks for a full rebind of the item in {@link RecyclerView}, so once a
+ * range combines to {@code null}, DiffUtil stops computing the payloads of its other items.
+ * 把连续的onChanged合并成一个区间时，用来合并各项的payload
+ */
+public interface PayloadCombiner {
+    /**
+     * Combines the payload of the items collected so far with the payload of the next item.
+     * Items are visited in ascending position order.
+     *
+     * @param combined The payload of the previous items of the range
+     * @param payload The payload of the next item, from
+     *                {@link Callback#getChangePayload(int, int)}
+     * @return The payload of both, or null to rebind the whole range.
+     */
+    @Nullable
+    Object combine(@Nullable Object combined, @Nullable Object payload);
+}
@@ -0,0 +1,281 @@
+/**
+ * Diffs lists made of sections, each section holding its own list of items, in two levels.
+ * <p>
+ * Flattening the sections into one {@link Callback} makes Myers' search pay for the edit
+ * distance of the whole screen at once. SectionedDiff first diffs the section keys, then diffs
+ * the items of every matched section on their own, optionally in parallel, and finally
+ * stitches the per-section results into one {@link DiffResult} over the flattened lists. The
+ * result dispatches positions of the flattened lists, so it can be dispatched to an adapter
+ * which shows all the sections one after another.
+ * <p>
+ * Items of removed and added sections are dispatched as removals and insertions. Moves are
+ * only detected within a section: an item that moves to another section, or a section that
+ * moves, is dispatched as a removal and an insertion.
+ * 先diff section，再在匹配的section内部各自diff，最后把位置加上section偏移拼成一个结果
+ */
+public static class SectionedDiff {
+    /**
+     * A Callback used by SectionedDiff to access both levels of the lists.
+     */
+    public abstract static class SectionCallback {
+        public abstract int getOldSectionCount();
+        public abstract int getNewSectionCount();
+        /**
+         * Called to decide whether two sections represent the same section, usually by
+         * comparing their keys.
+         */
+        public abstract boolean areSectionsTheSame(int oldSection, int newSection);
+        public abstract int getOldItemCount(int oldSection);
+        public abstract int getNewItemCount(int newSection);
+        /**
+         * Creates the Callback which diffs the items of two matched sections. Its positions are
+         * relative to the sections.
+         * <p>
+         * 可能在executor的线程上被调用
+         */
+        public abstract Callback createItemCallback(int oldSection, int newSection);
+    }
+    private SectionedDiff() {
+    }
+    /**
+     * Diffs the sections and then the items of every matched section on the calling thread.
+     *
+     * @param cb The callback that acts as a gateway to the backing section data
+     * @param config How to diff the items of a section
+     *
+     * @return A DiffResult over the flattened lists
+     */
+    public static DiffResult calculateDiff(SectionCallback cb, DiffConfig config) {
+        return calculateDiff(cb, config, null, 1);
+    }
+    /**
+     * Diffs the sections and then the items of the matched sections in parallel.
+     * <p>
+     * The calling thread diffs sections too, so this doesn't deadlock if the executor is busy
+     * or runs on the calling thread.
+     *
+     * @param cb The callback that acts as a gateway to the backing section data
+     * @param config How to diff the items of a section
+     * @param executor The executor which helps diffing sections, null to diff them all on the
+     *                 calling thread
+     * @param parallelism The maximum number of threads diffing sections, including the calling
+     *                    thread
+     *
+     * @return A DiffResult over the flattened lists
+     */
+    public static DiffResult calculateDiff(final SectionCallback cb, final DiffConfig config,
+            @Nullable Executor executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        final int oldSectionCount = cb.getOldSectionCount();
+        final int newSectionCount = cb.getNewSectionCount();
+        final int[] oldOffsets = offsets(cb, oldSectionCount, true);
+        final int[] newOffsets = offsets(cb, newSectionCount, false);
+        // the section level, a plain diagonal walk is all we need
+        final DiffResult sectionResult = DiffUtil.calculateDiff(new Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldSectionCount;
+            }
+            @Override
+            public int getNewListSize() {
+                return newSectionCount;
+            }
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return cb.areSectionsTheSame(oldItemPosition, newItemPosition);
+            }
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return true;
+            }
+        }, DiffConfig.NO_MOVES);
+        final SnakeList sectionSnakes = sectionResult.getSnakeList();
+        int pairCount = 0;
+        for (int i = 0; i < sectionSnakes.count(); i++) {
+            pairCount += sectionSnakes.getSize(i);
+        }
+        final int[] oldSections = new int[pairCount];
+        final int[] newSections = new int[pairCount];
+        int pair = 0;
+        for (int i = 0; i < sectionSnakes.count(); i++) {
+            for (int j = 0; j < sectionSnakes.getSize(i); j++) {
+                oldSections[pair] = sectionSnakes.getX(i) + j;
+                newSections[pair] = sectionSnakes.getY(i) + j;
+                pair++;
+            }
+        }
+        final SectionedCallback flattened = new SectionedCallback(oldOffsets, newOffsets);
+        final DiffResult[] results = new DiffResult[pairCount];
+        final AtomicInteger nextPair = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(pairCount);
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = nextPair.getAndIncrement()) < results.length) {
+                    try {
+                        if (failure.get() == null) {
+                            final int oldSection = oldSections[index];
+                            final int newSection = newSections[index];
+                            final Callback itemCallback = cb.createItemCallback(oldSection,
+                                    newSection);
+                            flattened.mItemCallbacks[oldSection] = itemCallback;
+                            results[index] = DiffUtil.calculateDiff(itemCallback, config);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+        if (executor != null) {
+            final int helpers = Math.min(parallelism, pairCount) - 1;
+            for (int i = 0; i < helpers; i++) {
+                executor.execute(worker);
+            }
+        }
+        worker.run();
+        awaitUninterruptibly(done);
+        final Throwable t = failure.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        }
+        // stitch the sections together, the pairs are in order so the snakes stay sorted
+        final int oldSize = oldOffsets[oldSectionCount];
+        final int newSize = newOffsets[newSectionCount];
+        final int[] oldItemStatuses = new int[oldSize];
+        final int[] newItemStatuses = new int[newSize];
+        final SnakeList snakes = new SnakeList();
+        boolean approximate = false;
+        for (int i = 0; i < pairCount; i++) {
+            final int oldSection = oldSections[i];
+            final int newSection = newSections[i];
+            flattened.mNewSections[oldSection] = newSection;
+            final int oldOffset = oldOffsets[oldSection];
+            final int newOffset = newOffsets[newSection];
+            final DiffResult result = results[i];
+            final SnakeList sectionItemSnakes = result.getSnakeList();
+            for (int j = 0; j < sectionItemSnakes.count(); j++) {
+                final int size = sectionItemSnakes.getSize(j);
+                if (size > 0) {
+                    snakes.add(oldOffset + sectionItemSnakes.getX(j),
+                            newOffset + sectionItemSnakes.getY(j), size, false, false);
+                }
+            }
+            result.copyStatusesTo(oldItemStatuses, oldOffset, newItemStatuses, newOffset);
+            approximate |= result.isApproximate();
+        }
+        final DiffResult result = new DiffResult();
+        result.initFromStatuses(flattened, snakes, oldItemStatuses, newItemStatuses,
+                config.mDetectMoves);
+        result.mApproximate = approximate;
+        return result;
+    }
+    /**
+     * Returns the flattened position of the first item of every section, followed by the size
+     * of the flattened list.
+     */
+    private static int[] offsets(SectionCallback cb, int sectionCount, boolean old) {
+        final int[] offsets = new int[sectionCount + 1];
+        for (int i = 0; i < sectionCount; i++) {
+            offsets[i + 1] = offsets[i]
+                    + (old ? cb.getOldItemCount(i) : cb.getNewItemCount(i));
+        }
+        return offsets;
+    }
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Presents the flattened lists to the result, forwarding to the item callback of the
+     * matched sections.
+     */
+    private static class SectionedCallback extends Callback {
+        final int[] mOldOffsets;
+        final int[] mNewOffsets;
+        // by old section, null if the section was removed
+        final Callback[] mItemCallbacks;
+        // by old section, -1 if the section was removed
+        final int[] mNewSections;
+        SectionedCallback(int[] oldOffsets, int[] newOffsets) {
+            mOldOffsets = oldOffsets;
+            mNewOffsets = newOffsets;
+            mItemCallbacks = new Callback[oldOffsets.length - 1];
+            mNewSections = new int[oldOffsets.length - 1];
+            Arrays.fill(mNewSections, -1);
+        }
+        @Override
+        public int getOldListSize() {
+            return mOldOffsets[mOldOffsets.length - 1];
+        }
+        @Override
+        public int getNewListSize() {
+            return mNewOffsets[mNewOffsets.length - 1];
+        }
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            final int oldSection = section(mOldOffsets, oldItemPosition);
+            final int newSection = section(mNewOffsets, newItemPosition);
+            return mNewSections[oldSection] == newSection
+                    && mItemCallbacks[oldSection].areItemsTheSame(
+                            oldItemPosition - mOldOffsets[oldSection],
+                            newItemPosition - mNewOffsets[newSection]);
+        }
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            final int oldSection = section(mOldOffsets, oldItemPosition);
+            final int newSection = section(mNewOffsets, newItemPosition);
+            return mNewSections[oldSection] == newSection
+                    && mItemCallbacks[oldSection].areContentsTheSame(
+                    oldItemPosition - mOldOffsets[oldSection],
+                    newItemPosition - mNewOffsets[newSection]);
+        }
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            final int oldSection = section(mOldOffsets, oldItemPosition);
+            final int newSection = section(mNewOffsets, newItemPosition);
+            if (mNewSections[oldSection] != newSection) {
+                return null;
+            }
+            return mItemCallbacks[oldSection].getChangePayload(
+                    oldItemPosition - mOldOffsets[oldSection],
+                    newItemPosition - mNewOffsets[newSection]);
+        }
+        /**
+         * Returns the section which contains the flattened position, skipping empty sections.
+         */
+        private static int section(int[] offsets, int position) {
+            // the last section whose offset is not after the position
+            int lo = 0;
+            int hi = offsets.length - 2;
+            while (lo < hi) {
+                final int mid = (lo + hi + 1) >>> 1;
+                if (offsets[mid] <= position) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+    }
+}
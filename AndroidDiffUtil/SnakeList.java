@@ -0,0 +1,163 @@
+/**
+ * Packed storage of Myers' snakes in parallel int arrays.
+ * <p>
+ * Replaces a {@code List<Snake>} so that large diffs don't keep one object per snake, sorting
+ * doesn't go through a boxed {@link Comparator} and adding the root snake doesn't shift the
+ * whole list.
+ * 下标0预留给root snake，排序之后如果第一个snake不在(0,0)，直接写入预留位置，不需要整体后移
+ */
+static class SnakeList {
+    private static final int FLAG_REMOVAL = 1;
+    private static final int FLAG_REVERSE = 1 << 1;
+    // below this, sort partitions with insertion sort
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private int[] mX;
+    private int[] mY;
+    private int[] mSize;
+    private int[] mFlags;
+    // entries are stored in [mStart, mEnd), mStart is 1 until the root snake is added
+    private int mStart = 1;
+    private int mEnd = 1;
+    SnakeList() {
+        this(16);
+    }
+    SnakeList(int capacity) {
+        capacity = Math.max(capacity, 2);
+        mX = new int[capacity];
+        mY = new int[capacity];
+        mSize = new int[capacity];
+        mFlags = new int[capacity];
+    }
+    void clear() {
+        mStart = 1;
+        mEnd = 1;
+    }
+    int count() {
+        return mEnd - mStart;
+    }
+    boolean isEmpty() {
+        return mEnd == mStart;
+    }
+    void add(int x, int y, int size, boolean removal, boolean reverse) {
+        if (mEnd == mX.length) {
+            final int capacity = mX.length * 2;
+            mX = Arrays.copyOf(mX, capacity);
+            mY = Arrays.copyOf(mY, capacity);
+            mSize = Arrays.copyOf(mSize, capacity);
+            mFlags = Arrays.copyOf(mFlags, capacity);
+        }
+        mX[mEnd] = x;
+        mY[mEnd] = y;
+        mSize[mEnd] = size;
+        mFlags[mEnd] = (removal ? FLAG_REMOVAL : 0) | (reverse ? FLAG_REVERSE : 0);
+        mEnd++;
+    }
+    /**
+     * Appends all snakes of the other list.
+     */
+    void addAll(SnakeList other) {
+        for (int i = 0; i < other.count(); i++) {
+            add(other.getX(i), other.getY(i), other.getSize(i), other.isRemoval(i),
+                    other.isReverse(i));
+        }
+    }
+    int getX(int index) {
+        return mX[mStart + index];
+    }
+    int getY(int index) {
+        return mY[mStart + index];
+    }
+    int getSize(int index) {
+        return mSize[mStart + index];
+    }
+    boolean isRemoval(int index) {
+        return (mFlags[mStart + index] & FLAG_REMOVAL) != 0;
+    }
+    boolean isReverse(int index) {
+        return (mFlags[mStart + index] & FLAG_REVERSE) != 0;
+    }
+    /**
+     * We always add a Snake to 0/0 so that we can run loops from end to beginning and be done
+     * when we run out of snakes. Must be called after {@link #sort()}.
+     */
+    void addRootIfMissing() {
+        if (mStart == 0 || !isEmpty() && getX(0) == 0 && getY(0) == 0) {
+            return;
+        }
+        mStart = 0;
+        mX[0] = 0;
+        mY[0] = 0;
+        mSize[0] = 0;
+        mFlags[0] = 0;
+    }
+    /**
+     * Sorts the snakes by x, then y. Snakes never share a start point, so the order is total.
+     */
+    void sort() {
+        sort(mStart, mEnd - 1);
+    }
+    private void sort(int left, int right) {
+        // recurse into the smaller partition only, so the depth stays logarithmic
+        while (right - left >= INSERTION_SORT_THRESHOLD) {
+            final long pivot = key(left + ((right - left) >>> 1));
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (key(i) < pivot) {
+                    i++;
+                }
+                while (key(j) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (j - left < right - i) {
+                sort(left, j);
+                left = i;
+            } else {
+                sort(i, right);
+                right = j;
+            }
+        }
+        for (int i = left + 1; i <= right; i++) {
+            for (int j = i; j > left && key(j - 1) > key(j); j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+    private long key(int slot) {
+        return ((long) mX[slot] << 32) | mY[slot];
+    }
+    private void swap(int a, int b) {
+        int tmp = mX[a];
+        mX[a] = mX[b];
+        mX[b] = tmp;
+        tmp = mY[a];
+        mY[a] = mY[b];
+        mY[b] = tmp;
+        tmp = mSize[a];
+        mSize[a] = mSize[b];
+        mSize[b] = tmp;
+        tmp = mFlags[a];
+        mFlags[a] = mFlags[b];
+        mFlags[b] = tmp;
+    }
+    /**
+     * Unpacks the snakes, only meant for tests.
+     */
+    List<Snake> toSnakes() {
+        final List<Snake> snakes = new ArrayList<>(count());
+        for (int i = 0; i < count(); i++) {
+            final Snake snake = new Snake();
+            snake.x = getX(i);
+            snake.y = getY(i);
+            snake.size = getSize(i);
+            snake.removal = isRemoval(i);
+            snake.reverse = isReverse(i);
+            snakes.add(snake);
+        }
+        return snakes;
+    }
+}
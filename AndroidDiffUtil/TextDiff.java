@@ -0,0 +1,347 @@
+/**
+ * Diffs two text files line by line and writes the differences in the unified diff format,
+ * like {@code diff -u} or {@code git diff}.
+ * <p>
+ * Made for large files such as logs: both files are memory-mapped, a line is only an offset
+ * into its mapping and is never copied into a {@link String}. Lines are interned into int ids
+ * (equal bytes, equal id) which become the keys of a {@link KeyedCallback}, so Myers' loop
+ * compares primitives. Hunks are written straight from the mappings as they are found.
+ * <pre>
+ *     try (OutputStream out = new BufferedOutputStream(new FileOutputStream(patch))) {
+ *         TextDiff.diff(oldFile, newFile, out, 3);
+ *     }
+ * </pre>
+ * Files are mapped as a whole, so each must be smaller than 2GB. Lines end with {@code '\n'},
+ * a {@code '\r'} before it is part of the line.
+ * 大文件文本diff：mmap + 行偏移索引 + 行内容转int id，输出unified diff
+ */
+public static final class TextDiff {
+    private static final byte[] NO_NEWLINE =
+            "\n\\ No newline at end of file\n".getBytes(Charset.forName("US-ASCII"));
+    private TextDiff() {
+    }
+    /**
+     * Writes the unified diff of two files, labelled with their paths.
+     *
+     * @param oldFile The file to diff from
+     * @param newFile The file to diff to
+     * @param out Receives the diff, nothing if the files have the same lines. Pass a buffered
+     *            stream, lines are written one by one.
+     * @param contextLines The number of unchanged lines around each change, 3 for
+     *                     {@code diff -u}
+     * @return The number of hunks written, 0 if the files have the same lines.
+     */
+    public static int diff(Path oldFile, Path newFile, OutputStream out, int contextLines)
+            throws IOException {
+        return diff(oldFile, newFile, out, contextLines, DiffConfig.NO_MOVES);
+    }
+    /**
+     * Same as {@link #diff(Path, Path, OutputStream, int)}, calculating the diff with the given
+     * config, e.g. to use {@link DiffStrategy#HISTOGRAM} like {@code git diff --histogram} or
+     * to bound its cost. Moves are never reported, unified diffs have no such thing.
+     */
+    public static int diff(Path oldFile, Path newFile, OutputStream out, int contextLines,
+            DiffConfig config) throws IOException {
+        if (contextLines < 0) {
+            throw new IllegalArgumentException("contextLines cannot be negative");
+        }
+        final Lines oldLines = Lines.map(oldFile);
+        final Lines newLines = Lines.map(newFile);
+        final LineCallback callback = new LineCallback(oldLines, newLines);
+        final DiffResult result = calculateDiff(callback, config);
+        final HunkWriter writer = new HunkWriter(oldLines, newLines, out, contextLines,
+                "--- " + oldFile + "\n+++ " + newFile + "\n");
+        // the gaps between the diagonals are the changes, in order
+        final SnakeList snakes = result.getSnakeList();
+        int posOld = 0;
+        int posNew = 0;
+        for (int i = 0; i < snakes.count(); i++) {
+            final int x = snakes.getX(i);
+            final int y = snakes.getY(i);
+            if (x > posOld || y > posNew) {
+                writer.onChange(posOld, x, posNew, y);
+            }
+            posOld = x + snakes.getSize(i);
+            posNew = y + snakes.getSize(i);
+        }
+        if (oldLines.count() > posOld || newLines.count() > posNew) {
+            writer.onChange(posOld, oldLines.count(), posNew, newLines.count());
+        }
+        writer.finish();
+        return writer.mHunks;
+    }
+    /**
+     * The lines of a mapped file, as offsets.
+     */
+    static final class Lines {
+        private final ByteBuffer mBuffer;
+        // positioned reads for copying lines out, so mBuffer's position is never touched
+        private final ByteBuffer mReader;
+        // start of each line, plus the end of the file
+        private int[] mOffsets;
+        private int mCount;
+        private Lines(ByteBuffer buffer) {
+            mBuffer = buffer;
+            mReader = buffer.duplicate();
+            mOffsets = new int[16];
+            final int size = buffer.limit();
+            int start = 0;
+            for (int i = 0; i < size; i++) {
+                if (buffer.get(i) == '\n') {
+                    addLine(start);
+                    start = i + 1;
+                }
+            }
+            if (start < size) {
+                // last line without a newline
+                addLine(start);
+            }
+            mOffsets[mCount] = size;
+        }
+        static Lines map(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                final long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException(path + " is too large to be mapped: "
+                            + size + " bytes");
+                }
+                // the mapping stays valid after the channel is closed
+                return new Lines(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+        }
+        private void addLine(int start) {
+            // keep a slot for the end offset
+            if (mCount + 2 > mOffsets.length) {
+                mOffsets = Arrays.copyOf(mOffsets, mOffsets.length * 2);
+            }
+            mOffsets[mCount++] = start;
+        }
+        int count() {
+            return mCount;
+        }
+        int start(int line) {
+            return mOffsets[line];
+        }
+        /**
+         * @return The end of the line, after its '\n' if it has one.
+         */
+        int end(int line) {
+            return mOffsets[line + 1];
+        }
+        boolean hasNewline(int line) {
+            return end(line) > start(line) && mBuffer.get(end(line) - 1) == '\n';
+        }
+        /**
+         * Copies {@code length} bytes of the file from {@code position} into {@code dst}.
+         */
+        void copy(int position, byte[] dst, int length) {
+            mReader.position(position);
+            mReader.get(dst, 0, length);
+        }
+        long hash(int line) {
+            // FNV-1a
+            long hash = 0xcbf29ce484222325L;
+            for (int i = start(line), end = end(line); i < end; i++) {
+                hash ^= mBuffer.get(i) & 0xFF;
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+        static boolean equal(Lines lines, int line, Lines otherLines, int otherLine) {
+            final int start = lines.start(line);
+            final int length = lines.end(line) - start;
+            final int otherStart = otherLines.start(otherLine);
+            if (otherLines.end(otherLine) - otherStart != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (lines.mBuffer.get(start + i) != otherLines.mBuffer.get(otherStart + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    /**
+     * Keys every line with the id of its contents. Lines with equal bytes share an id, lines
+     * with different bytes never do: a hash hit is checked against the bytes of the first
+     * line which got the id.
+     */
+    static final class LineCallback extends KeyedCallback {
+        private final Lines mOldLines;
+        private final Lines mNewLines;
+        private final long[] mOldKeys;
+        private final long[] mNewKeys;
+        // hash -> id, colliding contents are re-hashed until they find their own slot
+        private final LongIntHashMap mIds;
+        // the first line of each id, old lines as is and new lines as ~line
+        private int[] mRepresentatives = new int[16];
+        LineCallback(Lines oldLines, Lines newLines) {
+            mOldLines = oldLines;
+            mNewLines = newLines;
+            mIds = new LongIntHashMap(oldLines.count() + newLines.count());
+            mOldKeys = new long[oldLines.count()];
+            for (int i = 0; i < mOldKeys.length; i++) {
+                mOldKeys[i] = intern(oldLines, i, i);
+            }
+            mNewKeys = new long[newLines.count()];
+            for (int i = 0; i < mNewKeys.length; i++) {
+                mNewKeys[i] = intern(newLines, i, ~i);
+            }
+        }
+        private int intern(Lines lines, int line, int representative) {
+            long hash = lines.hash(line);
+            while (true) {
+                final int id = mIds.get(hash, -1);
+                if (id == -1) {
+                    final int newId = mIds.size();
+                    mIds.put(hash, newId, -1);
+                    if (newId == mRepresentatives.length) {
+                        mRepresentatives = Arrays.copyOf(mRepresentatives, newId * 2);
+                    }
+                    mRepresentatives[newId] = representative;
+                    return newId;
+                }
+                final int other = mRepresentatives[id];
+                if (other >= 0 ? Lines.equal(lines, line, mOldLines, other)
+                        : Lines.equal(lines, line, mNewLines, ~other)) {
+                    return id;
+                }
+                // same hash, different bytes
+                hash = hash * 0x9E3779B97F4A7C15L + 1;
+            }
+        }
+        @Override
+        public int getOldListSize() {
+            return mOldKeys.length;
+        }
+        @Override
+        public int getNewListSize() {
+            return mNewKeys.length;
+        }
+        @Override
+        public long[] getOldItemKeys() {
+            return mOldKeys;
+        }
+        @Override
+        public long[] getNewItemKeys() {
+            return mNewKeys;
+        }
+        @Override
+        public long[] getOldContentHashes() {
+            // a line is its contents
+            return mOldKeys;
+        }
+        @Override
+        public long[] getNewContentHashes() {
+            return mNewKeys;
+        }
+    }
+    /**
+     * Groups the changes into hunks and writes them. A hunk only keeps the bounds of its
+     * changes until it is written.
+     */
+    private static final class HunkWriter {
+        private final Lines mOldLines;
+        private final Lines mNewLines;
+        private final OutputStream mOut;
+        private final int mContext;
+        @Nullable
+        private String mHeader;
+        private final byte[] mChunk = new byte[8192];
+        // oldStart, oldEnd, newStart, newEnd of each change of the current hunk
+        private int[] mChanges = new int[16];
+        private int mChangeCount;
+        int mHunks;
+        HunkWriter(Lines oldLines, Lines newLines, OutputStream out, int context,
+                String header) {
+            mOldLines = oldLines;
+            mNewLines = newLines;
+            mOut = out;
+            mContext = context;
+            mHeader = header;
+        }
+        void onChange(int oldStart, int oldEnd, int newStart, int newEnd) throws IOException {
+            if (mChangeCount > 0) {
+                final int lastOldEnd = mChanges[mChangeCount * 4 - 3];
+                // the context after the last change and before this one would overlap
+                if (oldStart - lastOldEnd > 2 * mContext) {
+                    writeHunk();
+                }
+            }
+            if ((mChangeCount + 1) * 4 > mChanges.length) {
+                mChanges = Arrays.copyOf(mChanges, mChanges.length * 2);
+            }
+            final int offset = mChangeCount * 4;
+            mChanges[offset] = oldStart;
+            mChanges[offset + 1] = oldEnd;
+            mChanges[offset + 2] = newStart;
+            mChanges[offset + 3] = newEnd;
+            mChangeCount++;
+        }
+        void finish() throws IOException {
+            if (mChangeCount > 0) {
+                writeHunk();
+            }
+        }
+        private void writeHunk() throws IOException {
+            if (mHeader != null) {
+                write(mHeader);
+                mHeader = null;
+            }
+            final int last = (mChangeCount - 1) * 4;
+            final int leading = Math.min(mContext, mChanges[0]);
+            final int trailing = Math.min(mContext, mOldLines.count() - mChanges[last + 1]);
+            final int oldStart = mChanges[0] - leading;
+            final int newStart = mChanges[2] - leading;
+            final int oldCount = mChanges[last + 1] + trailing - oldStart;
+            final int newCount = mChanges[last + 3] + trailing - newStart;
+            write("@@ -" + range(oldStart, oldCount) + " +" + range(newStart, newCount)
+                    + " @@\n");
+            int posOld = oldStart;
+            for (int i = 0; i < mChangeCount; i++) {
+                final int offset = i * 4;
+                // unchanged lines, which are the same on both sides
+                for (int line = posOld; line < mChanges[offset]; line++) {
+                    writeLine(' ', mOldLines, line);
+                }
+                for (int line = mChanges[offset]; line < mChanges[offset + 1]; line++) {
+                    writeLine('-', mOldLines, line);
+                }
+                for (int line = mChanges[offset + 2]; line < mChanges[offset + 3]; line++) {
+                    writeLine('+', mNewLines, line);
+                }
+                posOld = mChanges[offset + 1];
+            }
+            for (int line = posOld; line < oldStart + oldCount; line++) {
+                writeLine(' ', mOldLines, line);
+            }
+            mChangeCount = 0;
+            mHunks++;
+        }
+        // like diff, an empty range is given by the line before it and a count of 1 is omitted
+        private static String range(int start, int count) {
+            if (count == 0) {
+                return start + ",0";
+            }
+            return count == 1 ? String.valueOf(start + 1) : (start + 1) + "," + count;
+        }
+        private void writeLine(char prefix, Lines lines, int line) throws IOException {
+            mOut.write(prefix);
+            int position = lines.start(line);
+            final int end = lines.end(line);
+            while (position < end) {
+                final int length = Math.min(mChunk.length, end - position);
+                lines.copy(position, mChunk, length);
+                mOut.write(mChunk, 0, length);
+                position += length;
+            }
+            if (!lines.hasNewline(line)) {
+                mOut.write(NO_NEWLINE);
+            }
+        }
+        private void write(String text) throws IOException {
+            mOut.write(text.getBytes(Charset.forName("UTF-8")));
+        }
+    }
+}
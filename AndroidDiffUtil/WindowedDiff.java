@@ -0,0 +1,337 @@
+/**
+ * The result of a diff which only looked at a window of two long lists, e.g. the visible part
+ * of an endless feed plus a margin.
+ * <p>
+ * Only the items inside the windows are given to the callback, so the cost of the diff grows
+ * with the size of the windows instead of the size of the lists. The items before and after
+ * the windows are assumed to be unchanged and aligned with the windows: the items right next
+ * to a window are paired with each other, and if one side is longer the extra items are
+ * dispatched as a single range insertion or removal at the far end of the list (position 0
+ * for the head, the end of the list for the tail). Appends to a feed are therefore a single
+ * {@link ListUpdateCallback#onInserted(int, int)} at the end.
+ * <pre>
+ *     WindowedDiff diff = WindowedDiff.calculateDiffAround(callback, oldFirstVisible,
+ *             newFirstVisible, margin, visibleCount + margin, DiffConfig.DEFAULT);
+ *     mAdapter.setData(newList);
+ *     diff.dispatchUpdatesTo(mAdapter);
+ * </pre>
+ * 窗口外的item不做比较，只按数量差发一次区间插入或删除，diff的开销只和窗口大小有关
+ */
+public static class WindowedDiff {
+    private final DiffResult mWindowResult;
+    private final int mOldListSize;
+    private final int mNewListSize;
+    private final int mOldWindowStart;
+    private final int mOldWindowEnd;
+    private final int mNewWindowStart;
+    private final int mNewWindowEnd;
+    private WindowedDiff(DiffResult windowResult, int oldListSize, int newListSize,
+            int oldWindowStart, int oldWindowEnd, int newWindowStart, int newWindowEnd) {
+        mWindowResult = windowResult;
+        mOldListSize = oldListSize;
+        mNewListSize = newListSize;
+        mOldWindowStart = oldWindowStart;
+        mOldWindowEnd = oldWindowEnd;
+        mNewWindowStart = newWindowStart;
+        mNewWindowEnd = newWindowEnd;
+    }
+    /**
+     * Diffs the windows around an anchor item, e.g. the first visible item, which is at
+     * {@code oldAnchor} in the old list and at {@code newAnchor} in the new list. The windows
+     * are clamped to the lists.
+     *
+     * @param cb The callback that acts as a gateway to the whole lists. It is only asked about
+     *           items inside the windows.
+     * @param oldAnchor The position of the anchor in the old list
+     * @param newAnchor The position of the anchor in the new list
+     * @param before How many items before the anchor to diff
+     * @param after How many items from the anchor on to diff, including the anchor
+     * @param config How to diff the windows
+     *
+     * @return The diff of the whole lists
+     */
+    public static WindowedDiff calculateDiffAround(Callback cb, int oldAnchor, int newAnchor,
+            int before, int after, DiffConfig config) {
+        if (before < 0 || after < 0) {
+            throw new IllegalArgumentException("window cannot be negative: " + before + ", "
+                    + after);
+        }
+        final int oldSize = cb.getOldListSize();
+        final int newSize = cb.getNewListSize();
+        checkPosition(oldAnchor, oldSize, "old");
+        checkPosition(newAnchor, newSize, "new");
+        return calculateDiff(cb, Math.max(0, oldAnchor - before),
+                (int) Math.min(oldSize, (long) oldAnchor + after),
+                Math.max(0, newAnchor - before),
+                (int) Math.min(newSize, (long) newAnchor + after), config);
+    }
+    /**
+     * Diffs the old window {@code [oldWindowStart, oldWindowEnd)} against the new window
+     * {@code [newWindowStart, newWindowEnd)}.
+     *
+     * @param cb The callback that acts as a gateway to the whole lists. It is only asked about
+     *           items inside the windows.
+     * @param oldWindowStart The first position of the old window
+     * @param oldWindowEnd The position after the old window
+     * @param newWindowStart The first position of the new window
+     * @param newWindowEnd The position after the new window
+     * @param config How to diff the windows
+     *
+     * @return The diff of the whole lists
+     */
+    public static WindowedDiff calculateDiff(Callback cb, int oldWindowStart, int oldWindowEnd,
+            int newWindowStart, int newWindowEnd, DiffConfig config) {
+        final int oldSize = cb.getOldListSize();
+        final int newSize = cb.getNewListSize();
+        checkWindow(oldWindowStart, oldWindowEnd, oldSize, "old");
+        checkWindow(newWindowStart, newWindowEnd, newSize, "new");
+        final Callback windowCallback = cb instanceof KeyedCallback
+                ? new KeyedWindowCallback((KeyedCallback) cb, oldWindowStart, oldWindowEnd,
+                        newWindowStart, newWindowEnd)
+                : new WindowCallback(cb, oldWindowStart, oldWindowEnd, newWindowStart,
+                        newWindowEnd);
+        return new WindowedDiff(DiffUtil.calculateDiff(windowCallback, config), oldSize,
+                newSize, oldWindowStart, oldWindowEnd, newWindowStart, newWindowEnd);
+    }
+    private static void checkPosition(int position, int size, String list) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Index out of bounds - passed position = "
+                    + position + ", " + list + " list size = " + size);
+        }
+    }
+    private static void checkWindow(int start, int end, int size, String list) {
+        if (start < 0 || start > end || end > size) {
+            throw new IndexOutOfBoundsException("window [" + start + ", " + end + ") out of "
+                    + list + " list size = " + size);
+        }
+    }
+    /**
+     * Returns the diff of the windows, its positions are relative to the window starts.
+     */
+    public DiffResult getWindowResult() {
+        return mWindowResult;
+    }
+    /**
+     * Dispatches update operations to the given adapter.
+     *
+     * @see DiffResult#dispatchUpdatesTo(RecyclerView.Adapter)
+     */
+    public void dispatchUpdatesTo(final RecyclerView.Adapter adapter) {
+        dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                adapter.notifyItemRangeInserted(position, count);
+            }
+            @Override
+            public void onRemoved(int position, int count) {
+                adapter.notifyItemRangeRemoved(position, count);
+            }
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                adapter.notifyItemMoved(fromPosition, toPosition);
+            }
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                adapter.notifyItemRangeChanged(position, count, payload);
+            }
+        });
+    }
+    /**
+     * Dispatches update operations to the given Callback, with positions of the whole lists.
+     *
+     * @see DiffResult#dispatchUpdatesTo(ListUpdateCallback)
+     */
+    public void dispatchUpdatesTo(ListUpdateCallback updateCallback) {
+        dispatchUpdatesTo(updateCallback, null);
+    }
+    /**
+     * Dispatches update operations to the given Callback, with positions of the whole lists.
+     *
+     * @see DiffResult#dispatchUpdatesTo(ListUpdateCallback, PayloadCombiner)
+     */
+    public void dispatchUpdatesTo(ListUpdateCallback updateCallback,
+            @Nullable PayloadCombiner payloadCombiner) {
+        final BatchingListUpdateCallback batchingCallback;
+        if (updateCallback instanceof BatchingListUpdateCallback) {
+            batchingCallback = (BatchingListUpdateCallback) updateCallback;
+        } else {
+            batchingCallback = new BatchingListUpdateCallback(updateCallback);
+        }
+        // back to front like DiffResult, so the positions before an update are still the old ones
+        final int oldTail = mOldListSize - mOldWindowEnd;
+        final int newTail = mNewListSize - mNewWindowEnd;
+        if (oldTail > newTail) {
+            batchingCallback.onRemoved(mOldWindowEnd + newTail, oldTail - newTail);
+        } else if (newTail > oldTail) {
+            batchingCallback.onInserted(mOldListSize, newTail - oldTail);
+        }
+        // the head in front of the window still has its old size
+        final int offset = mOldWindowStart;
+        mWindowResult.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                batchingCallback.onInserted(offset + position, count);
+            }
+            @Override
+            public void onRemoved(int position, int count) {
+                batchingCallback.onRemoved(offset + position, count);
+            }
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                batchingCallback.onMoved(offset + fromPosition, offset + toPosition);
+            }
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                batchingCallback.onChanged(offset + position, count, payload);
+            }
+        }, payloadCombiner);
+        if (mOldWindowStart > mNewWindowStart) {
+            batchingCallback.onRemoved(0, mOldWindowStart - mNewWindowStart);
+        } else if (mNewWindowStart > mOldWindowStart) {
+            batchingCallback.onInserted(0, mNewWindowStart - mOldWindowStart);
+        }
+        batchingCallback.dispatchLastEvent();
+    }
+    /**
+     * Given a position in the old list, returns the position in the new list, or
+     * {@link DiffResult#NO_POSITION} if it was removed.
+     *
+     * @param oldListPosition Position of item in old list
+     * @return Position of item in new list, or {@link DiffResult#NO_POSITION} if not present.
+     * @throws IndexOutOfBoundsException If the position is not in the old list.
+     */
+    public int convertOldPositionToNew(int oldListPosition) {
+        checkPosition(oldListPosition, mOldListSize, "old");
+        return convert(oldListPosition, mOldWindowStart, mOldWindowEnd, mOldListSize,
+                mNewWindowStart, mNewWindowEnd, mNewListSize, true);
+    }
+    /**
+     * Given a position in the new list, returns the position in the old list, or
+     * {@link DiffResult#NO_POSITION} if it was added.
+     *
+     * @param newListPosition Position of item in new list
+     * @return Position of item in old list, or {@link DiffResult#NO_POSITION} if not present.
+     * @throws IndexOutOfBoundsException If the position is not in the new list.
+     */
+    public int convertNewPositionToOld(int newListPosition) {
+        checkPosition(newListPosition, mNewListSize, "new");
+        return convert(newListPosition, mNewWindowStart, mNewWindowEnd, mNewListSize,
+                mOldWindowStart, mOldWindowEnd, mOldListSize, false);
+    }
+    private int convert(int position, int fromStart, int fromEnd, int fromSize, int toStart,
+            int toEnd, int toSize, boolean fromOld) {
+        if (position < fromStart) {
+            // the heads are aligned at the window starts
+            final int converted = position - fromStart + toStart;
+            return converted >= 0 ? converted : DiffResult.NO_POSITION;
+        }
+        if (position >= fromEnd) {
+            // the tails are aligned at the window ends
+            final int converted = position - fromEnd + toEnd;
+            return converted < toSize ? converted : DiffResult.NO_POSITION;
+        }
+        final int converted = fromOld
+                ? mWindowResult.convertOldPositionToNew(position - fromStart)
+                : mWindowResult.convertNewPositionToOld(position - fromStart);
+        return converted == DiffResult.NO_POSITION ? converted : converted + toStart;
+    }
+    /**
+     * Presents the windows of the lists to the diff.
+     */
+    private static class WindowCallback extends Callback {
+        private final Callback mCallback;
+        private final int mOldStart;
+        private final int mOldSize;
+        private final int mNewStart;
+        private final int mNewSize;
+        WindowCallback(Callback callback, int oldStart, int oldEnd, int newStart, int newEnd) {
+            mCallback = callback;
+            mOldStart = oldStart;
+            mOldSize = oldEnd - oldStart;
+            mNewStart = newStart;
+            mNewSize = newEnd - newStart;
+        }
+        @Override
+        public int getOldListSize() {
+            return mOldSize;
+        }
+        @Override
+        public int getNewListSize() {
+            return mNewSize;
+        }
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mCallback.areItemsTheSame(mOldStart + oldItemPosition,
+                    mNewStart + newItemPosition);
+        }
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mCallback.areContentsTheSame(mOldStart + oldItemPosition,
+                    mNewStart + newItemPosition);
+        }
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            return mCallback.getChangePayload(mOldStart + oldItemPosition,
+                    mNewStart + newItemPosition);
+        }
+    }
+    /**
+     * Keeps the keyed fast path by copying the keys of the windows, which is O(window).
+     */
+    private static class KeyedWindowCallback extends KeyedCallback {
+        private final KeyedCallback mCallback;
+        private final int mOldStart;
+        private final int mNewStart;
+        private final long[] mOldKeys;
+        private final long[] mNewKeys;
+        private final long[] mOldHashes;
+        private final long[] mNewHashes;
+        KeyedWindowCallback(KeyedCallback callback, int oldStart, int oldEnd, int newStart,
+                int newEnd) {
+            mCallback = callback;
+            mOldStart = oldStart;
+            mNewStart = newStart;
+            mOldKeys = Arrays.copyOfRange(callback.getOldItemKeys(), oldStart, oldEnd);
+            mNewKeys = Arrays.copyOfRange(callback.getNewItemKeys(), newStart, newEnd);
+            mOldHashes = Arrays.copyOfRange(callback.getOldContentHashes(), oldStart, oldEnd);
+            mNewHashes = Arrays.copyOfRange(callback.getNewContentHashes(), newStart, newEnd);
+        }
+        @Override
+        public int getOldListSize() {
+            return mOldKeys.length;
+        }
+        @Override
+        public int getNewListSize() {
+            return mNewKeys.length;
+        }
+        @Override
+        public long[] getOldItemKeys() {
+            return mOldKeys;
+        }
+        @Override
+        public long[] getNewItemKeys() {
+            return mNewKeys;
+        }
+        @Override
+        public long[] getOldContentHashes() {
+            return mOldHashes;
+        }
+        @Override
+        public long[] getNewContentHashes() {
+            return mNewHashes;
+        }
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            // the callback may not trust its hashes, see KeyedCallback
+            return mCallback.areContentsTheSame(mOldStart + oldItemPosition,
+                    mNewStart + newItemPosition);
+        }
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            return mCallback.getChangePayload(mOldStart + oldItemPosition,
+                    mNewStart + newItemPosition);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package androidx.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Stand-in for the AndroidX annotation of the same name, so the excerpts compile on the JVM.
+ */
+@Retention(RetentionPolicy.CLASS)
+public @interface VisibleForTesting {
+}
@@ -0,0 +1,282 @@
+package androidx.recyclerview.widget;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the diff engine and the dispatch path.
+ * <p>
+ * Run with the gc profiler to get allocation rates next to the throughput, e.g.
+ * <pre>
+ *     mvn -B package
+ *     java -jar target/benchmarks.jar DiffBenchmark -prof gc
+ * </pre>
+ * The auxiliary counters report how many times per second the Callback and the
+ * ListUpdateCallback were invoked; divided by the score of the benchmark they give the
+ * invocations per operation. Sizes go up to 10^6, so the {@code RANDOM} and {@code SHUFFLE}
+ * profiles of the largest size are slow with move detection on; filter them with
+ * {@code -p size=...} while iterating.
+ * 基准测试不在library里，单独作为benchmark模块编译
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffBenchmark {
+    /**
+     * RANDOM: ~1% of the items are removed, inserted or changed at random positions.
+     * MIDDLE: a handful of edits in the middle of the list.
+     * SHUFFLE: ~10% of the items move to random positions.
+     */
+    public enum EditProfile {
+        RANDOM, MIDDLE, SHUFFLE
+    }
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int size;
+    @Param({"RANDOM", "MIDDLE", "SHUFFLE"})
+    public EditProfile edits;
+    @Param({"true", "false"})
+    public boolean detectMoves;
+    private long[] mOldKeys;
+    private long[] mNewKeys;
+    private long[] mOldHashes;
+    private long[] mNewHashes;
+    private DiffUtil.DiffWorkspace mWorkspace;
+    private DiffUtil.DiffResult mResult;
+    // the callback of mResult, counts the payloads asked for by dispatchUpdates
+    private KeyedItems mResultItems;
+    private Counters mCounters;
+    /**
+     * Invocation counts, reported by JMH as rates like the benchmark score.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long areItemsTheSame;
+        public long areContentsTheSame;
+        public long getChangePayload;
+        public long listUpdates;
+        /**
+         * JMH reads the fields after every iteration but never clears them.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            areItemsTheSame = 0;
+            areContentsTheSame = 0;
+            getChangePayload = 0;
+            listUpdates = 0;
+        }
+    }
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(42);
+        mOldKeys = new long[size];
+        mOldHashes = new long[size];
+        for (int i = 0; i < size; i++) {
+            mOldKeys[i] = i;
+            mOldHashes[i] = random.nextLong();
+        }
+        final List<long[]> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new long[]{mOldKeys[i], mOldHashes[i]});
+        }
+        long nextKey = size;
+        switch (edits) {
+            case RANDOM:
+                for (int i = Math.max(1, size / 100); i > 0; i--) {
+                    final int pos = random.nextInt(items.size());
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            items.remove(pos);
+                            break;
+                        case 1:
+                            items.add(pos, new long[]{nextKey++, random.nextLong()});
+                            break;
+                        default:
+                            items.set(pos, new long[]{items.get(pos)[0], random.nextLong()});
+                            break;
+                    }
+                }
+                break;
+            case MIDDLE:
+                final int middle = size / 2;
+                for (int i = 0; i < 5 && middle + i < items.size(); i++) {
+                    items.set(middle + i, new long[]{items.get(middle + i)[0],
+                            random.nextLong()});
+                }
+                items.add(middle, new long[]{nextKey++, random.nextLong()});
+                items.remove(middle + 3);
+                break;
+            case SHUFFLE:
+                for (int i = Math.max(1, size / 10); i > 0; i--) {
+                    final long[] item = items.remove(random.nextInt(items.size()));
+                    items.add(random.nextInt(items.size() + 1), item);
+                }
+                break;
+        }
+        mNewKeys = new long[items.size()];
+        mNewHashes = new long[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            mNewKeys[i] = items.get(i)[0];
+            mNewHashes[i] = items.get(i)[1];
+        }
+        mWorkspace = new DiffUtil.DiffWorkspace();
+        mResultItems = new KeyedItems(null);
+        mResult = DiffUtil.calculateDiff(mResultItems, detectMoves);
+    }
+    @Setup(Level.Iteration)
+    public void bindCounters(Counters counters) {
+        mCounters = counters;
+        mResultItems.mCounters = counters;
+    }
+    /**
+     * calculateDiff (Myers' search, sort, findMatchingItems and move detection) through the
+     * virtual areItemsTheSame path.
+     */
+    @Benchmark
+    public DiffUtil.DiffResult calculateDiff() {
+        return DiffUtil.calculateDiff(new PlainItems(mCounters), detectMoves);
+    }
+    /**
+     * Same as {@link #calculateDiff()} with primitive keys.
+     */
+    @Benchmark
+    public DiffUtil.DiffResult calculateDiffKeyed() {
+        return DiffUtil.calculateDiff(new KeyedItems(mCounters), detectMoves);
+    }
+    /**
+     * Keyed diff on a re-used workspace, allocation should be close to 0 B/op.
+     */
+    @Benchmark
+    public DiffUtil.DiffResult calculateDiffWorkspace() {
+        return DiffUtil.calculateDiff(new KeyedItems(mCounters), detectMoves, mWorkspace);
+    }
+    /**
+     * Dispatches a pre-calculated diff into a no-op ListUpdateCallback.
+     */
+    @Benchmark
+    public void dispatchUpdates(Blackhole blackhole) {
+        mResult.dispatchUpdatesTo(new CountingUpdateCallback(mCounters, blackhole));
+    }
+    private class PlainItems extends DiffUtil.Callback {
+        final Counters mCounters;
+        PlainItems(Counters counters) {
+            mCounters = counters;
+        }
+        @Override
+        public int getOldListSize() {
+            return mOldKeys.length;
+        }
+        @Override
+        public int getNewListSize() {
+            return mNewKeys.length;
+        }
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            mCounters.areItemsTheSame++;
+            return mOldKeys[oldItemPosition] == mNewKeys[newItemPosition];
+        }
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            mCounters.areContentsTheSame++;
+            return mOldHashes[oldItemPosition] == mNewHashes[newItemPosition];
+        }
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            mCounters.getChangePayload++;
+            return null;
+        }
+    }
+    private class KeyedItems extends DiffUtil.KeyedCallback {
+        // null while the result for dispatchUpdates is calculated, bound per iteration after
+        Counters mCounters;
+        KeyedItems(Counters counters) {
+            mCounters = counters;
+        }
+        @Override
+        public int getOldListSize() {
+            return mOldKeys.length;
+        }
+        @Override
+        public int getNewListSize() {
+            return mNewKeys.length;
+        }
+        @Override
+        public long[] getOldItemKeys() {
+            return mOldKeys;
+        }
+        @Override
+        public long[] getNewItemKeys() {
+            return mNewKeys;
+        }
+        @Override
+        public long[] getOldContentHashes() {
+            return mOldHashes;
+        }
+        @Override
+        public long[] getNewContentHashes() {
+            return mNewHashes;
+        }
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            if (mCounters != null) {
+                mCounters.areContentsTheSame++;
+            }
+            return super.areContentsTheSame(oldItemPosition, newItemPosition);
+        }
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            if (mCounters != null) {
+                mCounters.getChangePayload++;
+            }
+            return null;
+        }
+    }
+    private static class CountingUpdateCallback implements ListUpdateCallback {
+        private final Counters mCounters;
+        private final Blackhole mBlackhole;
+        CountingUpdateCallback(Counters counters, Blackhole blackhole) {
+            mCounters = counters;
+            mBlackhole = blackhole;
+        }
+        @Override
+        public void onInserted(int position, int count) {
+            mCounters.listUpdates++;
+            mBlackhole.consume(position + count);
+        }
+        @Override
+        public void onRemoved(int position, int count) {
+            mCounters.listUpdates++;
+            mBlackhole.consume(position + count);
+        }
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mCounters.listUpdates++;
+            mBlackhole.consume(fromPosition + toPosition);
+        }
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mCounters.listUpdates++;
+            mBlackhole.consume(payload);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package androidx.recyclerview.widget;
+
+import androidx.annotation.Nullable;
+
+/**
+ * An interface that can receive Update operations that are applied to a list.
+ * <p>
+ * Copy of the RecyclerView interface, so the excerpts compile on the JVM.
+ */
+public interface ListUpdateCallback {
+    /**
+     * Called when {@code count} number of items are inserted at the given position.
+     */
+    void onInserted(int position, int count);
+    /**
+     * Called when {@code count} number of items are removed from the given position.
+     */
+    void onRemoved(int position, int count);
+    /**
+     * Called when an item changes its position in the list.
+     */
+    void onMoved(int fromPosition, int toPosition);
+    /**
+     * Called when {@code count} number of items are updated at the given position.
+     */
+    void onChanged(int position, int count, @Nullable Object payload);
+}
@@ -0,0 +1,26 @@
+package androidx.recyclerview.widget;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Stand-in for RecyclerView with only the adapter notifications DiffUtil dispatches, so the
+ * excerpts compile on the JVM.
+ */
+public class RecyclerView {
+    private RecyclerView() {
+    }
+    /**
+     * The notifications of RecyclerView.Adapter, they do nothing here.
+     */
+    public abstract static class Adapter {
+        public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        }
+        public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        }
+        public void notifyItemMoved(int fromPosition, int toPosition) {
+        }
+        public void notifyItemRangeChanged(int positionStart, int itemCount,
+                @Nullable Object payload) {
+        }
+    }
+}
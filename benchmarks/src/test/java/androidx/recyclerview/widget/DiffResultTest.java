@@ -0,0 +1,250 @@
+package androidx.recyclerview.widget;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests of the update stream of {@link DiffUtil.DiffResult}.
+ * <p>
+ * Every test replays the dispatched updates on a copy of the old list and checks that it ends
+ * up as the new list.
+ * 和DiffBenchmark一样不在library里，由benchmarks模块用JUnit 4编译
+ */
+@RunWith(JUnit4.class)
+public class DiffResultTest {
+    /**
+     * Plain callbacks pair moves through the scan of findMatchingItem, which must not pair an
+     * old item with two new items.
+     */
+    @Test
+    public void duplicateItemsWithMoves() {
+        assertDispatch(new int[]{0, 2, 2, 2}, new int[]{2, 0}, true);
+    }
+    @Test
+    public void duplicateItemsWithoutMoves() {
+        assertDispatch(new int[]{0, 2, 2, 2}, new int[]{2, 0}, false);
+    }
+    @Test
+    public void randomDuplicateItems() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            final int[] oldItems = randomItems(random);
+            final int[] newItems = randomItems(random);
+            assertDispatch(oldItems, newItems, true);
+            assertDispatch(oldItems, newItems, false);
+        }
+    }
+    /**
+     * The postponed updates of moves are tracked in a Fenwick tree, which must dispatch the
+     * same updates as the list of the original implementation.
+     */
+    @Test
+    public void postponedUpdatesMatchLinearScan() {
+        final Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            final int[] oldItems = shuffledItems(random, 0);
+            final int[] newItems = shuffledItems(random, oldItems.length / 4);
+            final DiffUtil.DiffResult result = DiffUtil.calculateDiff(
+                    new ItemCallback(oldItems, newItems), true);
+            final List<String> expected = new ArrayList<>();
+            result.dispatchUpdatesTo(new RecordingCallback(expected), null,
+                    new LinearPostponedUpdates());
+            final List<String> actual = new ArrayList<>();
+            result.dispatchUpdatesTo(new RecordingCallback(actual), null,
+                    new DiffUtil.PostponedUpdates(oldItems.length, newItems.length));
+            assertEquals(Arrays.toString(oldItems) + " -> " + Arrays.toString(newItems),
+                    expected, actual);
+        }
+    }
+    /**
+     * Every chunk of a {@link DiffUtil.ContentsTask} must find its own snakes and flag the
+     * same items as the sequential comparison.
+     */
+    @Test
+    public void parallelContentComparisonMatchesSequential() {
+        final DiffUtil.DiffConfig parallel = new DiffUtil.DiffConfig.Builder()
+                .setContentComparisonParallelism(ForkJoinPool.commonPool(), 3).build();
+        final Random random = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            final int[] oldItems = new int[random.nextInt(200)];
+            final int[] newItems = new int[random.nextInt(200)];
+            for (int j = 0; j < oldItems.length; j++) {
+                oldItems[j] = random.nextInt(8);
+            }
+            for (int j = 0; j < newItems.length; j++) {
+                newItems[j] = random.nextInt(8);
+            }
+            // items are the same by value / 2, contents by value
+            final DiffUtil.Callback cb = new ItemCallback(oldItems, newItems) {
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    return mOldItems[oldItemPosition] / 2 == mNewItems[newItemPosition] / 2;
+                }
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    return mOldItems[oldItemPosition] == mNewItems[newItemPosition];
+                }
+            };
+            final List<String> expected = new ArrayList<>();
+            DiffUtil.calculateDiff(cb, DiffUtil.DiffConfig.DEFAULT)
+                    .dispatchUpdatesTo(new RecordingCallback(expected));
+            final List<String> actual = new ArrayList<>();
+            DiffUtil.calculateDiff(cb, parallel).dispatchUpdatesTo(new RecordingCallback(actual));
+            assertEquals(Arrays.toString(oldItems) + " -> " + Arrays.toString(newItems),
+                    expected, actual);
+        }
+    }
+    private static int[] shuffledItems(Random random, int offset) {
+        // distinct values, shuffled so that most of the common items are moves
+        final List<Integer> values = new ArrayList<>();
+        final int size = random.nextInt(60);
+        for (int i = 0; i < size; i++) {
+            values.add(offset + i);
+        }
+        Collections.shuffle(values, random);
+        final int[] items = new int[size];
+        for (int i = 0; i < size; i++) {
+            items[i] = values.get(i);
+        }
+        return items;
+    }
+    private static int[] randomItems(Random random) {
+        // few distinct values so that most items have duplicates
+        final int[] items = new int[random.nextInt(12)];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = random.nextInt(4);
+        }
+        return items;
+    }
+    private static void assertDispatch(int[] oldItems, int[] newItems, boolean detectMoves) {
+        final DiffUtil.DiffResult result = DiffUtil.calculateDiff(
+                new ItemCallback(oldItems, newItems), detectMoves);
+        final List<Integer> list = new ArrayList<>();
+        for (int item : oldItems) {
+            list.add(item);
+        }
+        result.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    // the inserted value is filled in below from the new list
+                    list.add(position, null);
+                }
+            }
+            @Override
+            public void onRemoved(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    list.remove(position);
+                }
+            }
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                list.add(toPosition, list.remove(fromPosition));
+            }
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+            }
+        });
+        final String message = Arrays.toString(oldItems) + " -> " + Arrays.toString(newItems);
+        assertEquals(message, newItems.length, list.size());
+        for (int i = 0; i < newItems.length; i++) {
+            if (list.get(i) != null) {
+                assertEquals(message, newItems[i], (int) list.get(i));
+            }
+            assertEquals(message, list.get(i) == null,
+                    result.convertNewPositionToOld(i) == DiffUtil.DiffResult.NO_POSITION);
+        }
+    }
+    private static class ItemCallback extends DiffUtil.Callback {
+        final int[] mOldItems;
+        final int[] mNewItems;
+        ItemCallback(int[] oldItems, int[] newItems) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+        @Override
+        public int getOldListSize() {
+            return mOldItems.length;
+        }
+        @Override
+        public int getNewListSize() {
+            return mNewItems.length;
+        }
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems[oldItemPosition] == mNewItems[newItemPosition];
+        }
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return true;
+        }
+    }
+    static class RecordingCallback implements ListUpdateCallback {
+        private final List<String> mUpdates;
+        RecordingCallback(List<String> updates) {
+            mUpdates = updates;
+        }
+        @Override
+        public void onInserted(int position, int count) {
+            mUpdates.add("insert " + position + " " + count);
+        }
+        @Override
+        public void onRemoved(int position, int count) {
+            mUpdates.add("remove " + position + " " + count);
+        }
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mUpdates.add("move " + fromPosition + " " + toPosition);
+        }
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mUpdates.add("change " + position + " " + count + " " + payload);
+        }
+    }
+    /**
+     * The postponed updates as a list, scanned on every update like the original
+     * removePostponedUpdate.
+     */
+    private static class LinearPostponedUpdates extends DiffUtil.PostponedUpdates {
+        // {posInOwnerList, currentPos, removal ? 1 : 0}
+        private final List<int[]> mUpdates = new ArrayList<>();
+        LinearPostponedUpdates() {
+            super(0, 0);
+        }
+        @Override
+        void add(int posInOwnerList, int currentPos, boolean removal) {
+            mUpdates.add(new int[]{posInOwnerList, currentPos, removal ? 1 : 0});
+        }
+        @Override
+        void offsetAll(int delta) {
+            for (int[] update : mUpdates) {
+                update[1] += delta;
+            }
+        }
+        @Override
+        int remove(int posInOwnerList, boolean removal) {
+            for (int i = mUpdates.size() - 1; i >= 0; i--) {
+                final int[] update = mUpdates.get(i);
+                if (update[0] == posInOwnerList && (update[2] == 1) == removal) {
+                    mUpdates.remove(i);
+                    for (int j = i; j < mUpdates.size(); j++) {
+                        mUpdates.get(j)[1] += removal ? 1 : -1;
+                    }
+                    return update[1];
+                }
+            }
+            throw new IllegalStateException("no postponed " + (removal ? "removal" : "addition")
+                    + " for pos " + posInOwnerList);
+        }
+    }
+}
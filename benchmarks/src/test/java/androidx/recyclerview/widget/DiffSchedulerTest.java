@@ -0,0 +1,123 @@
+package androidx.recyclerview.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Tests of {@link DiffUtil.DiffScheduler}, with the background executor run by hand.
+ */
+@RunWith(JUnit4.class)
+public class DiffSchedulerTest {
+    private static final int[] INITIAL = {1, 2, 3};
+    private static final int[] FAILING = {3, 2, 1};
+    private static final int[] NEXT = {1, 3, 4};
+    private final ArrayDeque<Runnable> mBackground = new ArrayDeque<>();
+    private final Executor mBackgroundExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mBackground.add(command);
+        }
+    };
+    private final Executor mResultExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private final List<int[]> mDelivered = new ArrayList<>();
+    /**
+     * A snapshot submitted while a diff fails must still get its diff, from the last
+     * delivered snapshot.
+     */
+    @Test
+    public void pendingSnapshotSurvivesFailedDiff() {
+        final ResubmittingFactory factory = new ResubmittingFactory();
+        final DiffUtil.DiffScheduler<int[]> scheduler = new DiffUtil.DiffScheduler<>(INITIAL,
+                factory, new RecordingReceiver(false), DiffUtil.DiffConfig.DEFAULT,
+                mBackgroundExecutor, mResultExecutor);
+        factory.mScheduler = scheduler;
+        scheduler.submit(FAILING);
+        runFailingDiff();
+        assertEquals(1, mBackground.size());
+        mBackground.poll().run();
+        assertEquals(1, mDelivered.size());
+        assertSame(NEXT, mDelivered.get(0));
+        assertEquals(2, scheduler.getSubmittedCount());
+        assertEquals(1, scheduler.getDroppedCount());
+        assertEquals(1, scheduler.getDeliveredCount());
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+    /**
+     * A snapshot whose receiver threw with nothing pending counts as dropped, and the next
+     * diff starts from the previously delivered snapshot.
+     */
+    @Test
+    public void throwingReceiverDropsSnapshot() {
+        final RecordingReceiver receiver = new RecordingReceiver(true);
+        final DiffUtil.DiffScheduler<int[]> scheduler = new DiffUtil.DiffScheduler<>(INITIAL,
+                new DiffUtil.DiffScheduler.CallbackFactory<int[]>() {
+                    @Override
+                    public DiffUtil.Callback create(int[] oldSnapshot, int[] newSnapshot) {
+                        assertSame(INITIAL, oldSnapshot);
+                        return new DiffUtilTest.ItemCallback(oldSnapshot, newSnapshot);
+                    }
+                }, receiver, DiffUtil.DiffConfig.DEFAULT, mBackgroundExecutor,
+                mResultExecutor);
+        scheduler.submit(FAILING);
+        runFailingDiff();
+        assertEquals(1, scheduler.getDroppedCount());
+        assertEquals(0, scheduler.getDeliveredCount());
+        assertEquals(0, scheduler.getQueueDepth());
+        scheduler.submit(NEXT);
+        mBackground.poll().run();
+        assertEquals(1, mDelivered.size());
+        assertSame(NEXT, mDelivered.get(0));
+        assertEquals(1, scheduler.getDeliveredCount());
+    }
+    private void runFailingDiff() {
+        try {
+            mBackground.poll().run();
+            fail("the diff of the failing snapshot should throw");
+        } catch (IllegalStateException expected) {
+        }
+    }
+    /**
+     * Throws for {@link #FAILING}, after submitting {@link #NEXT} while its diff runs.
+     */
+    private static class ResubmittingFactory
+            implements DiffUtil.DiffScheduler.CallbackFactory<int[]> {
+        DiffUtil.DiffScheduler<int[]> mScheduler;
+        @Override
+        public DiffUtil.Callback create(int[] oldSnapshot, int[] newSnapshot) {
+            if (newSnapshot == FAILING) {
+                mScheduler.submit(NEXT);
+                throw new IllegalStateException("failing snapshot");
+            }
+            assertSame(INITIAL, oldSnapshot);
+            return new DiffUtilTest.ItemCallback(oldSnapshot, newSnapshot);
+        }
+    }
+    private class RecordingReceiver implements DiffUtil.DiffScheduler.Receiver<int[]> {
+        private final boolean mFailOnFailing;
+        RecordingReceiver(boolean failOnFailing) {
+            mFailOnFailing = failOnFailing;
+        }
+        @Override
+        public void onDiffResult(int[] snapshot, DiffUtil.DiffResult result) {
+            if (mFailOnFailing && snapshot == FAILING) {
+                throw new IllegalStateException("failing receiver");
+            }
+            mDelivered.add(snapshot);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package androidx.recyclerview.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests of the snakes found by {@link DiffUtil#calculateDiff(DiffUtil.Callback, boolean)}.
+ * <p>
+ * The snakes must only pair items which are the same, and must pair as many of them as a
+ * longest common subsequence does.
+ */
+@RunWith(JUnit4.class)
+public class DiffUtilTest {
+    /**
+     * With duplicate items the middle snake may overlap the other direction's path on a
+     * diagonal whose items differ, it must not be reported as matching.
+     */
+    @Test
+    public void duplicateItemsAroundMiddleSnake() {
+        assertSnakes(new int[]{1}, new int[]{0, 1, 0, 1, 0});
+        assertSnakes(new int[]{0}, new int[]{1, 0, 1, 0, 1});
+        assertSnakes(new int[]{0, 1, 0, 1, 0}, new int[]{1});
+    }
+    @Test
+    public void randomDuplicateItems() {
+        final Random random = new Random(11);
+        for (int i = 0; i < 5000; i++) {
+            assertSnakes(randomItems(random), randomItems(random));
+        }
+    }
+    /**
+     * Skipping the common head and tail must not change the result of the search on the whole
+     * lists, also when their items have duplicates in the middle.
+     */
+    @Test
+    public void trimmedEndsMatchUntrimmedSearch() {
+        final DiffUtil.DiffConfig untrimmed = new DiffUtil.DiffConfig.Builder()
+                .setTrimEnds(false).build();
+        final Random random = new Random(5);
+        for (int i = 0; i < 20000; i++) {
+            final int values = 2 + random.nextInt(30);
+            final int[] head = randomItems(random, 8, values);
+            final int[] tail = randomItems(random, 8, values);
+            final int[] oldItems = concat(head, randomItems(random, 12, values), tail);
+            final int[] newItems = concat(head, randomItems(random, 12, values), tail);
+            final DiffUtil.Callback cb = new ItemKeyedCallback(oldItems, newItems);
+            final String message = Arrays.toString(oldItems) + " -> "
+                    + Arrays.toString(newItems);
+            assertEquals(message, describe(DiffUtil.calculateDiff(cb, untrimmed), oldItems),
+                    describe(DiffUtil.calculateDiff(cb, DiffUtil.DiffConfig.DEFAULT), oldItems));
+        }
+    }
+    /**
+     * The parallel search finds the same snakes as the sequential one, and its k-lines stay
+     * with the caller's workspace.
+     */
+    @Test
+    public void parallelSearchMatchesSequential() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final DiffUtil.DiffConfig parallel = new DiffUtil.DiffConfig.Builder()
+                    .setParallelism(pool, 8).build();
+            final DiffUtil.DiffWorkspace workspace = new DiffUtil.DiffWorkspace();
+            final Random random = new Random(9);
+            for (int i = 0; i < 500; i++) {
+                final int[] oldItems = randomItems(random, 120, 10);
+                final int[] newItems = randomItems(random, 120, 10);
+                final DiffUtil.Callback cb = new ItemKeyedCallback(oldItems, newItems);
+                final List<String> expected = describeSnakes(
+                        DiffUtil.calculateDiff(cb, DiffUtil.DiffConfig.DEFAULT));
+                assertEquals(Arrays.toString(oldItems) + " -> " + Arrays.toString(newItems),
+                        expected, describeSnakes(DiffUtil.calculateDiff(cb, parallel, workspace)));
+            }
+            assertTrue(!workspace.mTaskWorkspaces.isEmpty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+    private static int[] concat(int[] head, int[] middle, int[] tail) {
+        final int[] items = Arrays.copyOf(head, head.length + middle.length + tail.length);
+        System.arraycopy(middle, 0, items, head.length, middle.length);
+        System.arraycopy(tail, 0, items, head.length + middle.length, tail.length);
+        return items;
+    }
+    private static List<String> describeSnakes(DiffUtil.DiffResult result) {
+        final List<String> description = new ArrayList<>();
+        for (DiffUtil.Snake snake : result.getSnakes()) {
+            description.add(snake.x + "," + snake.y + "," + snake.size);
+        }
+        return description;
+    }
+    /**
+     * The dispatched updates and the old to new positions of a result.
+     */
+    private static List<String> describe(DiffUtil.DiffResult result, int[] oldItems) {
+        final List<String> description = new ArrayList<>();
+        result.dispatchUpdatesTo(new DiffResultTest.RecordingCallback(description));
+        for (int i = 0; i < oldItems.length; i++) {
+            description.add(i + " -> " + result.convertOldPositionToNew(i));
+        }
+        return description;
+    }
+    static int[] randomItems(Random random) {
+        // few distinct values so that most items have duplicates
+        return randomItems(random, 16, 3);
+    }
+    private static int[] randomItems(Random random, int maxSize, int values) {
+        final int[] items = new int[random.nextInt(maxSize)];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = random.nextInt(values);
+        }
+        return items;
+    }
+    private static void assertSnakes(int[] oldItems, int[] newItems) {
+        assertSnakes(oldItems, newItems, new ItemCallback(oldItems, newItems));
+        assertSnakes(oldItems, newItems, new ItemKeyedCallback(oldItems, newItems));
+    }
+    private static void assertSnakes(int[] oldItems, int[] newItems, DiffUtil.Callback cb) {
+        final String message = Arrays.toString(oldItems) + " -> " + Arrays.toString(newItems);
+        final DiffUtil.DiffResult result = DiffUtil.calculateDiff(cb, false);
+        int matched = 0;
+        for (DiffUtil.Snake snake : result.getSnakes()) {
+            for (int i = 0; i < snake.size; i++) {
+                assertEquals(message, oldItems[snake.x + i], newItems[snake.y + i]);
+            }
+            matched += snake.size;
+        }
+        assertEquals(message, lcs(oldItems, newItems), matched);
+    }
+    /**
+     * Length of the longest common subsequence, by dynamic programming.
+     */
+    private static int lcs(int[] oldItems, int[] newItems) {
+        final int[][] lengths = new int[oldItems.length + 1][newItems.length + 1];
+        for (int i = 1; i <= oldItems.length; i++) {
+            for (int j = 1; j <= newItems.length; j++) {
+                lengths[i][j] = oldItems[i - 1] == newItems[j - 1]
+                        ? lengths[i - 1][j - 1] + 1
+                        : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+            }
+        }
+        return lengths[oldItems.length][newItems.length];
+    }
+    static class ItemCallback extends DiffUtil.Callback {
+        final int[] mOldItems;
+        final int[] mNewItems;
+        ItemCallback(int[] oldItems, int[] newItems) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+        @Override
+        public int getOldListSize() {
+            return mOldItems.length;
+        }
+        @Override
+        public int getNewListSize() {
+            return mNewItems.length;
+        }
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems[oldItemPosition] == mNewItems[newItemPosition];
+        }
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return true;
+        }
+    }
+    static class ItemKeyedCallback extends DiffUtil.KeyedCallback {
+        private final int mOldListSize;
+        private final int mNewListSize;
+        private final long[] mOldKeys;
+        private final long[] mNewKeys;
+        ItemKeyedCallback(int[] oldItems, int[] newItems) {
+            mOldListSize = oldItems.length;
+            mNewListSize = newItems.length;
+            mOldKeys = toKeys(oldItems);
+            mNewKeys = toKeys(newItems);
+        }
+        private static long[] toKeys(int[] items) {
+            final long[] keys = new long[items.length];
+            for (int i = 0; i < items.length; i++) {
+                keys[i] = items[i];
+            }
+            return keys;
+        }
+        @Override
+        public int getOldListSize() {
+            return mOldListSize;
+        }
+        @Override
+        public int getNewListSize() {
+            return mNewListSize;
+        }
+        @Override
+        public long[] getOldItemKeys() {
+            return mOldKeys;
+        }
+        @Override
+        public long[] getNewItemKeys() {
+            return mNewKeys;
+        }
+        @Override
+        public long[] getOldContentHashes() {
+            return mOldKeys;
+        }
+        @Override
+        public long[] getNewContentHashes() {
+            return mNewKeys;
+        }
+    }
+}